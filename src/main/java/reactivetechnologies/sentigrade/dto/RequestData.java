@@ -35,6 +35,7 @@ import com.hazelcast.nio.ObjectDataOutput;
 import com.hazelcast.nio.serialization.DataSerializable;
 
 import reactivetechnologies.sentigrade.engine.ClassificationModelEngine;
+import reactivetechnologies.sentigrade.engine.nlp.SentimentVector.Tier;
 import reactivetechnologies.sentigrade.services.ModelExecutionService;
 import weka.core.Attribute;
 import weka.core.DenseInstance;
@@ -49,11 +50,13 @@ public class RequestData implements DataSerializable {
 	
 	private static ObjectWriter jsonWriter;
 	private static ObjectReader jsonReader;
+	private static ObjectReader jsonTextsReader;
 	static
 	{
 		ObjectMapper OMAPPER = new ObjectMapper();
 		jsonWriter = OMAPPER.writerFor(RequestData.class).with(new DefaultPrettyPrinter());
 		jsonReader = OMAPPER.readerFor(RequestData.class);
+		jsonTextsReader = OMAPPER.readerFor(String[].class);
 	}
 	public RequestData() {
 	}
@@ -100,6 +103,30 @@ public class RequestData implements DataSerializable {
 			throw new IllegalArgumentException(e);
 		}
 	}
+	/**
+	 * RequestData with a Tuple for each text in a json array of strings. To be used for invoking {@linkplain ModelExecutionService#classifyBatch(RequestData)}.
+	 * @param json
+	 * @return
+	 */
+	public static RequestData fromJsonTexts(String json)
+	{
+		try {
+			String[] texts = jsonTextsReader.readValue(json);
+			return new RequestData(Arrays.asList(texts));
+		} catch (IOException e) {
+			throw new IllegalArgumentException(e);
+		}
+	}
+	/**
+	 * RequestData with a Tuple for each text. To be used for invoking {@linkplain ModelExecutionService#classifyBatch(RequestData)}. This constructor
+	 * is NOT supposed to be used with training data.
+	 * @param texts
+	 */
+	public RequestData(List<String> texts)
+	{
+		for(String text : texts)
+			this.dataSet.add(new Tuple(text, null));
+	}
 	/**
 	 * RequestData with a single Tuple. To be used for invoking {@linkplain ModelExecutionService#classifyInstance(RequestData)}. This constructor
 	 * is NOT supposed to be used with training data.
@@ -145,6 +172,20 @@ public class RequestData implements DataSerializable {
 		i.setValue(struct.attribute(ClassificationModelEngine.CLASSIFIER_ATTRIB_CLASS_IDX), t.getTextClass());
 		return i;
 	}
+	/**
+	 * Build an instance for each Tuple (including test tuples without class), in the same order.
+	 * @return
+	 */
+	public List<Instance> toInstanceList()
+	{
+		Assert.notEmpty(getDataSet(), "'dataSet' is empty or null");
+		Instances struct = getStructure();
+		List<Instance> list = new ArrayList<>(getDataSet().size());
+		for (Tuple t : getDataSet()) {
+			list.add(buildInstance(struct, t));
+		}
+		return list;
+	}
 	/**
 	 * Construct a 2-attribute text instance, with the class attribute at last.
 	 * @return
@@ -240,6 +281,30 @@ public class RequestData implements DataSerializable {
 	public void setUseSentimentVector(boolean useSentimentVector) {
 		this.useSentimentVector = useSentimentVector;
 	}
+	@JsonIgnore
+	private long deadlineMillis = 0;
+	/**
+	 * Max time to wait for a full analysis of the text, before falling back to a faster analysis. 
+	 * @return deadline, or 0 to use the configured default
+	 */
+	public long getDeadlineMillis() {
+		return deadlineMillis;
+	}
+	public void setDeadlineMillis(long deadlineMillis) {
+		this.deadlineMillis = deadlineMillis;
+	}
+	@JsonIgnore
+	private Tier analysisTier;
+	/**
+	 * The analysis tier which produced the vector for the last classified text. Set on classification.
+	 * @return
+	 */
+	public Tier getAnalysisTier() {
+		return analysisTier;
+	}
+	public void setAnalysisTier(Tier analysisTier) {
+		this.analysisTier = analysisTier;
+	}
 	private String domain = ClassificationModelEngine.DEFAULT_CLASSIFIER_DOMAIN;
 	private final List<String> classes = new ArrayList<>();
 	private final List<Tuple> dataSet = new LinkedList<>();
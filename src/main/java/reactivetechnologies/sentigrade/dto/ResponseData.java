@@ -15,6 +15,11 @@
  */
 package reactivetechnologies.sentigrade.dto;
 
+import java.util.ArrayList;
+import java.util.List;
+
+import reactivetechnologies.sentigrade.engine.nlp.SentimentVector.Tier;
+
 public class ResponseData {
 
 	public static enum Mode {LOCAL,CLUSTER}
@@ -23,7 +28,36 @@ public class ResponseData {
 	int code = CODE_OK;
 	String message = "";
 	String classification = "";
+	List<String> classifications = new ArrayList<>();
 	Mode model = Mode.CLUSTER;
+	Tier tier;
+	String jobId;
+	/**
+	 * The id of the background training job, if the build request was submitted as one.
+	 * @return
+	 */
+	public String getJobId() {
+		return jobId;
+	}
+	public void setJobId(String jobId) {
+		this.jobId = jobId;
+	}
+	/**
+	 * The analysis tier which produced the classification, if applicable.
+	 * @return
+	 */
+	public Tier getTier() {
+		return tier;
+	}
+	public void setTier(Tier tier) {
+		this.tier = tier;
+	}
+	public List<String> getClassifications() {
+		return classifications;
+	}
+	public void setClassifications(List<String> classifications) {
+		this.classifications = classifications;
+	}
 	public Mode getModel() {
 		return model;
 	}
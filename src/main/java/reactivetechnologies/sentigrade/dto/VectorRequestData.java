@@ -18,18 +18,22 @@ package reactivetechnologies.sentigrade.dto;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.NoSuchElementException;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.util.Assert;
 import org.springframework.util.StringUtils;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
 import reactivetechnologies.sentigrade.engine.ClassificationModelEngine;
 import reactivetechnologies.sentigrade.engine.nlp.SentimentAnalyzer;
-import reactivetechnologies.sentigrade.engine.nlp.SentimentAnalyzer.BuildInstancesDelegate;
-import reactivetechnologies.sentigrade.err.OperationFailedUnexpectedly;
+import reactivetechnologies.sentigrade.engine.nlp.SentimentAnalyzer.BuildInstancesDelegate.InstanceStream;
+import reactivetechnologies.sentigrade.engine.nlp.SentimentVector;
 import reactivetechnologies.sentigrade.utils.ConfigUtil;
 import weka.core.Attribute;
 import weka.core.Instance;
@@ -75,78 +79,122 @@ public class VectorRequestData extends RequestData {
 		setDataSet(data.getDataSet());
 		setClasses(data.getClasses());
 		setDomain(data.getDomain());
+		setDeadlineMillis(data.getDeadlineMillis());
 	}
 	
 	
+	/**
+	 * Analyzes the text of a classification request in the calling thread, within the request deadline, and records the 
+	 * analysis tier used.
+	 */
 	@Override
 	protected Instance buildInstance(Instances struct, Tuple t)
 	{
-		BuildInstancesDelegate builder = analyzer.newInstancesBuilder();
-		builder.submitInstance(struct, t);
-		try {
-			return builder.pollInstance();
-		} catch (InterruptedException e) {
-			Thread.currentThread().interrupt();
-			throw new OperationFailedUnexpectedly(e);
-		}
-		
+		SentimentVector vector = analyzer.getTieredSentiment(t.getText(), getDeadlineMillis());
+		setAnalysisTier(vector.getTier());
+		return SentimentAnalyzer.newWekaInstance(struct, t, vector);
 	}
 	
 	//injected through factory bean
 	SentimentAnalyzer analyzer;
+	@JsonIgnore
+	private Iterator<Tuple> tupleSource;
+	/**
+	 * Train from a stream of tuples, instead of the data set. The tuples are read only as they are vectorized, 
+	 * and can be consumed once only.
+	 * @param tupleSource
+	 */
+	public void setTupleSource(Iterator<Tuple> tupleSource) {
+		this.tupleSource = tupleSource;
+	}
+	/**
+	 * If the training tuples are streamed from a source, in which case the total count is not known upfront.
+	 * @return
+	 */
+	@JsonIgnore
+	public boolean isStreaming() {
+		return tupleSource != null;
+	}
 	private static final Logger log = LoggerFactory.getLogger(VectorRequestData.class);
 	//Expensive!
 	@Override
 	public Instances toInstances() 
 	{
-		Assert.notEmpty(getDataSet(), "'dataSet' is empty or null");
+		Assert.isTrue(isStreaming() || !getDataSet().isEmpty(), "'dataSet' is empty or null");
 		final Instances data = getStructure();
-		BuildInstancesDelegate builder = analyzer.newInstancesBuilder();
-		int count=0;
+		InstanceStream instances = toInstanceStream(data);
+		int count = getDataSet().size();
 		log.info("Start transforming to vector. This may take some time ..");
 		long start = System.currentTimeMillis();
-		for (Tuple t : getDataSet()) {
-			if (StringUtils.isEmpty(t.textClass) || t.text == null)
-				continue;
-
-			builder.submitInstance(data, t);
-			count++;
-			
+		int pct = isStreaming() ? STREAM_LOG_INTERVAL : Math.max(1, count/10);
+		int i = 0;
+		while (instances.hasNext()) {
+			data.add(instances.next());
+			if(++i % pct == 0)
+				log.info(getDomain()+"| Processed "+(isStreaming() ? i+" instances" : (100 * i / count)+"%")+" .. "+instances);
+		}
+		long time = System.currentTimeMillis() - start;
+		log.info(getDomain()+"| End transformation. Time taken: "+ConfigUtil.toTimeElapsedString(time)+". "+instances);
+		return data;
+	}
+	/**
+	 * Vectorize the training tuples as a pull style stream. Tuples are submitted for analysis only as the consumer 
+	 * pulls instances, with a bounded number in flight.
+	 * @return
+	 */
+	public InstanceStream toInstanceStream()
+	{
+		Assert.isTrue(isStreaming() || !getDataSet().isEmpty(), "'dataSet' is empty or null");
+		return toInstanceStream(getStructure());
+	}
+	private InstanceStream toInstanceStream(Instances struct)
+	{
+		return analyzer.newInstancesBuilder().stream(struct, new TrainingTuples(isStreaming() ? tupleSource : getDataSet().iterator()));
+	}
+	/**
+	 * Progress is logged at every these many instances, when streaming.
+	 */
+	public static final int STREAM_LOG_INTERVAL = 1000;
+	/**
+	 * Skips the tuples without text or class.
+	 */
+	private static class TrainingTuples implements Iterator<Tuple>
+	{
+		private final Iterator<Tuple> tuples;
+		private Tuple next;
+		TrainingTuples(Iterator<Tuple> tuples) {
+			this.tuples = tuples;
 		}
-		int pct = count/10;
-		for (int i = 0; i < count; i++) {
-			try 
+		@Override
+		public boolean hasNext() {
+			while(next == null && tuples.hasNext())
 			{
-				data.add(builder.pollInstance());
-				if(i > 0 && i % pct == 0)
-					log.info("Processed "+(10 * (i/pct))+"% ..");
-				
-			} catch (InterruptedException e) {
-				Thread.currentThread().interrupt();
-				throw new OperationFailedUnexpectedly(e);
+				Tuple t = tuples.next();
+				if (!StringUtils.isEmpty(t.textClass) && t.text != null)
+					next = t;
 			}
+			return next != null;
+		}
+		@Override
+		public Tuple next() {
+			if(!hasNext())
+				throw new NoSuchElementException();
+			Tuple t = next;
+			next = null;
+			return t;
 		}
-		long time = System.currentTimeMillis() - start;
-		log.info("End transformation. Time taken: "+ConfigUtil.toTimeElapsedString(time));
-		return data;
 	}
 	
-	public BuildInstancesDelegate toInstancesAsync() 
+	/**
+	 * Vectorize all the tuples (including test tuples without class), maintaining the order. The sentences across the tuples 
+	 * are analyzed concurrently.
+	 */
+	@Override
+	public List<Instance> toInstanceList()
 	{
 		Assert.notEmpty(getDataSet(), "'dataSet' is empty or null");
-		final Instances data = getStructure();
-		BuildInstancesDelegate builder = analyzer.newInstancesBuilder();
-		for (Tuple t : getDataSet()) {
-			if (StringUtils.isEmpty(t.textClass) || t.text == null)
-				continue;
-
-			builder.submitInstance(data, t);
-			
-		}
-				
-		return builder;
+		return analyzer.buildInstances(getStructure(), getDataSet());
 	}
-
 	
 	@Override
 	protected void buildStructure() 
@@ -0,0 +1,218 @@
+/**
+ * Copyright 2017 esutdal
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package reactivetechnologies.sentigrade.engine.nlp;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import edu.stanford.nlp.pipeline.AnnotationPipeline;
+import edu.stanford.nlp.pipeline.Annotator;
+import edu.stanford.nlp.pipeline.MorphaAnnotator;
+import edu.stanford.nlp.pipeline.NERCombinerAnnotator;
+import edu.stanford.nlp.pipeline.POSTaggerAnnotator;
+import edu.stanford.nlp.pipeline.ParserAnnotator;
+import edu.stanford.nlp.pipeline.SentimentAnnotator;
+import edu.stanford.nlp.pipeline.TokenizerAnnotator;
+import edu.stanford.nlp.pipeline.WordsToSentencesAnnotator;
+
+/**
+ * A process wide registry of CoreNLP annotators. Each annotator (and hence its model) is loaded only once, on first 
+ * use, and shared by all the pipelines assembled from this registry. Annotators are thread safe; but pipelines keep 
+ * timing statistics, so prefer a pipeline per thread.
+ * <p>
+ * Independent annotators can be loaded in parallel at startup using {@link #preload(String...)}. Those not preloaded 
+ * (for e.g. {@link #NER}, {@link #LEMMA}) are loaded when first requested.
+ * @author esutdal
+ *
+ */
+public final class AnnotatorRegistry {
+
+	public static final String TOKENIZE = "tokenize";
+	public static final String SSPLIT = "ssplit";
+	public static final String POS = "pos";
+	public static final String LEMMA = "lemma";
+	public static final String NER = "ner";
+	public static final String PARSE = "parse";
+	public static final String SENTIMENT = "sentiment";
+	
+	private static final Logger log = LoggerFactory.getLogger(AnnotatorRegistry.class);
+	private static final AnnotatorRegistry INSTANCE = new AnnotatorRegistry();
+	/**
+	 * The shared registry.
+	 * @return
+	 */
+	public static AnnotatorRegistry getInstance() {
+		return INSTANCE;
+	}
+	
+	private final ConcurrentMap<String, FutureTask<Annotator>> annotators = new ConcurrentHashMap<>();
+	private AnnotatorRegistry() {
+	}
+	
+	private static Annotator create(String name) throws Exception
+	{
+		switch(name)
+		{
+			case TOKENIZE:
+				return new TokenizerAnnotator(false, "en");
+			case SSPLIT:
+				return new WordsToSentencesAnnotator(false);
+			case POS:
+				return new POSTaggerAnnotator(false);
+			case LEMMA:
+				return new MorphaAnnotator(false);
+			case NER:
+				return new NERCombinerAnnotator(false);
+			case PARSE:
+				Properties props = new Properties();
+				//sentiment model requires binarized trees
+				props.setProperty("parse.binaryTrees", "true");
+				return new ParserAnnotator(PARSE, props);
+			case SENTIMENT:
+				return new SentimentAnnotator(SENTIMENT, new Properties());
+			default:
+				throw new IllegalArgumentException("Unknown annotator '"+name+"'");
+		}
+	}
+	private FutureTask<Annotator> taskFor(final String name)
+	{
+		FutureTask<Annotator> task = annotators.get(name);
+		if(task == null)
+		{
+			FutureTask<Annotator> newTask = new FutureTask<>(new Callable<Annotator>() {
+
+				@Override
+				public Annotator call() throws Exception {
+					long start = System.currentTimeMillis();
+					Annotator a = create(name);
+					log.info("Loaded annotator '"+name+"' in "+(System.currentTimeMillis()-start)+" ms");
+					return a;
+				}
+			});
+			task = annotators.putIfAbsent(name, newTask);
+			if(task == null)
+				task = newTask;
+		}
+		return task;
+	}
+	/**
+	 * Get the annotator, loading it if not already loaded. Concurrent callers wait on the same load.
+	 * @param name
+	 * @return
+	 * @throws IllegalStateException if the annotator could not be loaded
+	 */
+	public Annotator get(String name)
+	{
+		FutureTask<Annotator> task = taskFor(name);
+		//no-op if already run, or running in another thread
+		task.run();
+		try 
+		{
+			return task.get();
+		} 
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while loading annotator '"+name+"'", e);
+		} 
+		catch (ExecutionException e) {
+			//allow a retry
+			annotators.remove(name, task);
+			throw new IllegalStateException("Unable to load annotator '"+name+"'", e.getCause());
+		}
+	}
+	/**
+	 * If the annotator has been loaded.
+	 * @param name
+	 * @return
+	 */
+	public boolean isLoaded(String name)
+	{
+		FutureTask<Annotator> task = annotators.get(name);
+		return task != null && task.isDone();
+	}
+	/**
+	 * Load the given annotators in parallel, and wait for all of them.
+	 * @param names
+	 * @throws IllegalStateException if any annotator could not be loaded
+	 */
+	public void preload(String...names)
+	{
+		ExecutorService loaders = Executors.newFixedThreadPool(Math.max(1, Math.min(names.length, Runtime.getRuntime().availableProcessors())), new ThreadFactory() {
+			int n = 0;
+			@Override
+			public synchronized Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "AnnotatorLoaderThread-"+(n++));
+				t.setDaemon(true);
+				return t;
+			}
+		});
+		try 
+		{
+			List<Future<Annotator>> loads = new ArrayList<>(names.length);
+			for(final String name : names)
+			{
+				loads.add(loaders.submit(new Callable<Annotator>() {
+
+					@Override
+					public Annotator call() throws Exception {
+						return get(name);
+					}
+				}));
+			}
+			for(Future<Annotator> f : loads)
+			{
+				try {
+					f.get();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new IllegalStateException("Interrupted while loading annotators", e);
+				} catch (ExecutionException e) {
+					throw (e.getCause() instanceof IllegalStateException) ? (IllegalStateException) e.getCause() : new IllegalStateException(e.getCause());
+				}
+			}
+		} 
+		finally {
+			loaders.shutdown();
+		}
+	}
+	/**
+	 * Assemble a new pipeline of the given annotators, in order. Annotators not yet loaded are loaded first.
+	 * @param names
+	 * @return
+	 */
+	public AnnotationPipeline pipeline(String...names)
+	{
+		AnnotationPipeline pipeline = new AnnotationPipeline();
+		for(String name : names)
+		{
+			pipeline.addAnnotator(get(name));
+		}
+		return pipeline;
+	}
+}
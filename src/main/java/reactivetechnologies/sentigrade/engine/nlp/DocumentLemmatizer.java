@@ -0,0 +1,219 @@
+/**
+ * Copyright 2017 esutdal
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package reactivetechnologies.sentigrade.engine.nlp;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import edu.stanford.nlp.ling.CoreAnnotations;
+import edu.stanford.nlp.ling.CoreLabel;
+import edu.stanford.nlp.pipeline.Annotation;
+import edu.stanford.nlp.pipeline.AnnotationPipeline;
+import edu.stanford.nlp.process.Morphology;
+import edu.stanford.nlp.util.CoreMap;
+import weka.core.Attribute;
+import weka.core.DenseInstance;
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.core.Utils;
+
+/**
+ * Lemmatizes whole documents, as a pre-pass to word vector conversion. Each document is tokenized and POS tagged
+ * in a single CoreNLP call, and the documents are processed in parallel. The lemma of a (token, POS) pair is 
+ * derived using {@linkplain Morphology}, and kept in a bounded LRU cache.
+ * <p>
+ * This is used in place of {@linkplain LemmatizationStemmer}, which runs the full pipeline on every single token.
+ * @author esutdal
+ *
+ */
+public class DocumentLemmatizer {
+
+	private final ExecutorService threads;
+	//max number of documents submitted, but not yet collected
+	private final int window;
+	private final int maxCacheEntries;
+	private final LinkedHashMap<String, String> lemmaCache;
+	
+	private final ThreadLocal<AnnotationPipeline> pipelines = new ThreadLocal<AnnotationPipeline>(){
+		@Override
+		protected AnnotationPipeline initialValue() {
+			return AnnotatorRegistry.getInstance().pipeline(AnnotatorRegistry.TOKENIZE, AnnotatorRegistry.SSPLIT, AnnotatorRegistry.POS);
+		}
+	};
+	//Morphology is not thread safe
+	private final ThreadLocal<Morphology> morphology = new ThreadLocal<Morphology>(){
+		@Override
+		protected Morphology initialValue() {
+			return new Morphology();
+		}
+	};
+	/**
+	 * 
+	 * @param nThreads number of threads, or 0 for available processors
+	 * @param maxCacheEntries max (token, POS) pairs held in the lemma cache
+	 */
+	public DocumentLemmatizer(int nThreads, int maxCacheEntries) {
+		this.maxCacheEntries = maxCacheEntries;
+		lemmaCache = new LinkedHashMap<String, String>(Math.min(maxCacheEntries, 1024), 0.75f, true){
+
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+				return size() > DocumentLemmatizer.this.maxCacheEntries;
+			}
+		};
+		nThreads = nThreads > 0 ? nThreads : Runtime.getRuntime().availableProcessors();
+		window = 4 * nThreads;
+		threads = Executors.newFixedThreadPool(nThreads, new ThreadFactory() {
+			int n = 0;
+			@Override
+			public synchronized Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "LemmatizerThread-"+(n++));
+				t.setDaemon(true);
+				return t;
+			}
+		});
+	}
+	
+	private String lemma(String word, String tag)
+	{
+		if(tag == null)
+			return word;
+		String key = word + '\u0000' + tag;
+		String lemma;
+		synchronized (lemmaCache) {
+			lemma = lemmaCache.get(key);
+		}
+		if(lemma == null)
+		{
+			lemma = morphology.get().lemma(word, tag);
+			synchronized (lemmaCache) {
+				lemmaCache.put(key, lemma);
+			}
+		}
+		return lemma;
+	}
+	/**
+	 * Lemmatize a document. The lemmas are returned space separated, in the order of tokens. The original text of 
+	 * the tokens is lemmatized, and not the PTB escaped form (for e.g '-LRB-' for '(').
+	 * @param text
+	 * @return
+	 */
+	public String lemmatize(String text)
+	{
+		Annotation document = new Annotation(text);
+		pipelines.get().annotate(document);
+		StringBuilder lemmas = new StringBuilder(text.length());
+		for (CoreMap sentence : document.get(CoreAnnotations.SentencesAnnotation.class)) 
+		{
+			for (CoreLabel token : sentence.get(CoreAnnotations.TokensAnnotation.class)) 
+			{
+				if(lemmas.length() > 0)
+					lemmas.append(' ');
+				String word = token.originalText();
+				lemmas.append(lemma(word != null ? word : token.word(), token.tag()));
+			}
+		}
+		return lemmas.toString();
+	}
+	/**
+	 * Lemmatize all the string attributes of the given instances, in parallel across documents. At most a window of
+	 * documents is submitted ahead of the one being collected, so that a large dataset is not held up in the 
+	 * executor queue. A new dataset is returned, the given dataset is not modified.
+	 * @param data
+	 * @return
+	 * @throws Exception
+	 */
+	public Instances lemmatize(Instances data) throws Exception
+	{
+		List<Integer> stringAttribs = new ArrayList<>();
+		ArrayList<Attribute> attribs = new ArrayList<>(data.numAttributes());
+		for (int i = 0; i < data.numAttributes(); i++) {
+			Attribute a = data.attribute(i);
+			if(a.isString())
+			{
+				stringAttribs.add(i);
+				a = new Attribute(a.name(), (List<String>) null);
+			}
+			else
+				a = (Attribute) a.copy();
+			attribs.add(a);
+		}
+		Instances lemmatized = new Instances(data.relationName(), attribs, data.numInstances());
+		lemmatized.setClassIndex(data.classIndex());
+		if(stringAttribs.isEmpty())
+		{
+			for(Instance inst : data)
+				lemmatized.add(new DenseInstance(inst.weight(), inst.toDoubleArray()));
+			return lemmatized;
+		}
+		
+		final int total = data.numInstances() * stringAttribs.size();
+		ArrayDeque<Future<String>> texts = new ArrayDeque<>(Math.min(window, total));
+		int submitted = 0;
+		try 
+		{
+			for(Instance inst : data)
+			{
+				double[] values = inst.toDoubleArray();
+				for(int i : stringAttribs)
+				{
+					while(submitted < total && texts.size() < window)
+					{
+						texts.add(submit(data.instance(submitted / stringAttribs.size()), stringAttribs.get(submitted % stringAttribs.size())));
+						submitted++;
+					}
+					String text = texts.poll().get();
+					values[i] = text == null ? Utils.missingValue() : lemmatized.attribute(i).addStringValue(text);
+				}
+				lemmatized.add(new DenseInstance(inst.weight(), values));
+			}
+		} 
+		catch (ExecutionException e) {
+			for(Future<String> f : texts)
+				f.cancel(true);
+			throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+		}
+		return lemmatized;
+	}
+	private Future<String> submit(final Instance inst, final int i)
+	{
+		return threads.submit(new Callable<String>() {
+
+			@Override
+			public String call() throws Exception {
+				return inst.isMissing(i) ? null : lemmatize(inst.stringValue(i));
+			}
+		});
+	}
+	/**
+	 * Stop the worker threads.
+	 */
+	public void shutdown()
+	{
+		threads.shutdown();
+	}
+}
@@ -0,0 +1,121 @@
+/**
+ * Copyright 2017 esutdal
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package reactivetechnologies.sentigrade.engine.nlp;
+
+import java.io.IOException;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.TokenFilter;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.Tokenizer;
+import org.apache.lucene.analysis.core.LowerCaseFilter;
+import org.apache.lucene.analysis.core.StopAnalyzer;
+import org.apache.lucene.analysis.core.StopFilter;
+import org.apache.lucene.analysis.en.EnglishPossessiveFilter;
+import org.apache.lucene.analysis.ngram.NGramTokenFilter;
+import org.apache.lucene.analysis.shingle.ShingleFilter;
+import org.apache.lucene.analysis.snowball.SnowballFilter;
+import org.apache.lucene.analysis.standard.ClassicFilter;
+import org.apache.lucene.analysis.standard.ClassicTokenizer;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.analysis.util.CharArraySet;
+import org.tartarus.snowball.ext.PorterStemmer;
+
+/**
+ * A Lucene analyzer for gram tokenizing plain english texts. Instances are stateless and shared; the token stream
+ * components are cached per thread by the analyzer reuse strategy, and reused across documents. Hence at most one
+ * token stream can be open per thread at a time.
+ * @author esutdal
+ *
+ */
+public final class EnglishTextAnalyzer extends Analyzer {
+
+	/**
+	 * Callback for each token of a document. The buffer is reused, and valid only during the call.
+	 */
+	public static interface TokenConsumer
+	{
+		void accept(char[] buffer, int length);
+	}
+	/**
+	 * Single printable characters, and english stop words.
+	 */
+	static final CharArraySet STOP_WORDS;
+	static {
+		CharArraySet stopWords = new CharArraySet(128 + StopAnalyzer.ENGLISH_STOP_WORDS_SET.size(), false);
+		for (char i = 32; i <= 126; i++) {
+			stopWords.add(Character.toString(i));
+		}
+		stopWords.addAll(StopAnalyzer.ENGLISH_STOP_WORDS_SET);
+		STOP_WORDS = CharArraySet.unmodifiableSet(stopWords);
+	}
+	
+	private static final EnglishTextAnalyzer PLAIN = new EnglishTextAnalyzer(false), STEMMING = new EnglishTextAnalyzer(true);
+	/**
+	 * The shared analyzer.
+	 * @param enableStemming whether to apply porter stemming
+	 * @return
+	 */
+	public static EnglishTextAnalyzer get(boolean enableStemming)
+	{
+		return enableStemming ? STEMMING : PLAIN;
+	}
+	
+	private final boolean enableStemming;
+	private EnglishTextAnalyzer(boolean enableStemming) {
+		super();
+		this.enableStemming = enableStemming;
+	}
+	
+	@Override
+	protected TokenStreamComponents createComponents(String fieldName) {
+		Tokenizer source = new ClassicTokenizer();
+
+		TokenFilter filter = new ClassicFilter(source);
+		filter = new EnglishPossessiveFilter(filter);
+		filter = new LowerCaseFilter(filter);
+		filter = new ShingleFilter(filter, 2, 2);
+		filter = new StopFilter(filter, STOP_WORDS);
+		if (enableStemming) {
+			filter = new SnowballFilter(filter, new PorterStemmer());
+		}
+		filter = new NGramTokenFilter(filter, 1, 3);
+		
+		return new TokenStreamComponents(source, filter);
+	}
+	/**
+	 * Tokenize the text, passing each token to the consumer, without creating strings.
+	 * @param text
+	 * @param consumer
+	 * @throws IOException
+	 */
+	public void tokenize(String text, TokenConsumer consumer) throws IOException
+	{
+		try(TokenStream stream = tokenStream(null, text))
+		{
+			CharTermAttribute term = stream.addAttribute(CharTermAttribute.class);
+			stream.reset();
+			while (stream.incrementToken()) {
+				consumer.accept(term.buffer(), term.length());
+			}
+			stream.end();
+		}
+	}
+	
+	public boolean isEnableStemming() {
+		return enableStemming;
+	}
+}
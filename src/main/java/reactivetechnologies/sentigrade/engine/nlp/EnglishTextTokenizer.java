@@ -19,95 +19,79 @@
 */
 package reactivetechnologies.sentigrade.engine.nlp;
 
+import java.io.Closeable;
 import java.io.IOException;
-import java.io.StringReader;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.NoSuchElementException;
 import java.util.Set;
 
-import org.apache.lucene.analysis.Analyzer;
-import org.apache.lucene.analysis.TokenFilter;
 import org.apache.lucene.analysis.TokenStream;
-import org.apache.lucene.analysis.Tokenizer;
-import org.apache.lucene.analysis.core.LowerCaseFilter;
-import org.apache.lucene.analysis.core.StopAnalyzer;
-import org.apache.lucene.analysis.core.StopFilter;
-import org.apache.lucene.analysis.en.EnglishPossessiveFilter;
-import org.apache.lucene.analysis.ngram.NGramTokenFilter;
-import org.apache.lucene.analysis.shingle.ShingleFilter;
-import org.apache.lucene.analysis.snowball.SnowballFilter;
-import org.apache.lucene.analysis.standard.ClassicFilter;
-import org.apache.lucene.analysis.standard.ClassicTokenizer;
 import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
-import org.apache.lucene.analysis.util.CharArraySet;
 import org.springframework.util.Assert;
-import org.tartarus.snowball.ext.PorterStemmer;
 
 import reactivetechnologies.sentigrade.err.OperationFailedUnexpectedly;
 /**
- * A Lucene based analyzer for gram tokenizing plain english texts.
+ * Iterates the gram tokens of plain english texts, using the shared {@linkplain EnglishTextAnalyzer}. An instance can be
+ * reused across documents by {@link #open(String)}, and the underlying token stream is reused per thread.
  * @author esutdal
  *
  */
-public class EnglishTextTokenizer extends Analyzer implements Iterator<String>{
+public class EnglishTextTokenizer implements Iterator<String>, Closeable{
 
-	private final static Set<String> characters = new HashSet<>();
-	static {
-		for (char i = 32; i <= 126; i++) {
-			characters.add(Character.toString(i));
-		}
-	}
-
-	private EnglishTextTokenizer() {
+	public EnglishTextTokenizer() {
 		super();
 	}
 	private String text;
 	private TokenStream stream;
+	private CharTermAttribute term;
 	public EnglishTextTokenizer(String text) {
 		this();
 		this.text = text;
 	}
 	private boolean opened;
+	private boolean fetched, hasToken;
 	public void open() throws IOException
 	{
-		stream = tokenStream(null, new StringReader(text));
+		open(text);
+	}
+	/**
+	 * Open a token stream on the given text. Any previous stream is closed.
+	 * @param text
+	 * @throws IOException
+	 */
+	public void open(String text) throws IOException
+	{
+		release();
+		this.text = text;
+		stream = EnglishTextAnalyzer.get(enableStemming).tokenStream(null, text);
+		term = stream.addAttribute(CharTermAttribute.class);
 		stream.reset();
 		opened = true;
+		fetched = false;
 	}
 
 	/**
 	 * 
-	 * @param analyzer
 	 * @param text
 	 * @return
 	 * @throws IOException
 	 */
 	public static Set<String> getTokens(String text) throws IOException {
-		Set<String> result = new HashSet<String>();
-		TokenStream stream = null;
-		Analyzer analyzer = new EnglishTextTokenizer();
-		try {
-			stream = analyzer.tokenStream(null, new StringReader(text));
-			stream.reset();
-			while (stream.incrementToken()) {
-				result.add(stream.getAttribute(CharTermAttribute.class).toString());
-			}
-
-		} catch (IOException e) {
-			throw e;
-		} finally {
-			if (stream != null) {
-				stream.end();
-				stream.close();
+		final Set<String> result = new HashSet<String>();
+		EnglishTextAnalyzer.get(false).tokenize(text, new EnglishTextAnalyzer.TokenConsumer() {
+			
+			@Override
+			public void accept(char[] buffer, int length) {
+				result.add(new String(buffer, 0, length));
 			}
-			analyzer.close();
-		}
+		});
 		return result;
 	}
-
-	@Override
-	public void close()
+	/*
+	 * The per thread stream must be closed before it can be reused.
+	 */
+	private void release()
 	{
 		if (stream != null) {
 			try {
@@ -116,48 +100,40 @@ public class EnglishTextTokenizer extends Analyzer implements Iterator<String>{
 			} catch (IOException e) {
 				e.printStackTrace();
 			}
+			stream = null;
+			term = null;
 		}
-		
-		super.close();
 	}
 	@Override
-	protected TokenStreamComponents createComponents(String fieldName) {
-		Tokenizer source = new ClassicTokenizer();
-		CharArraySet stopWords = CharArraySet.copy(characters);
-		stopWords.addAll(StopAnalyzer.ENGLISH_STOP_WORDS_SET);
-
-		TokenFilter filter = new ClassicFilter(source);
-		filter = new EnglishPossessiveFilter(filter);
-		filter = new LowerCaseFilter(filter);
-		filter = new ShingleFilter(filter, 2, 2);
-		filter = new StopFilter(filter, stopWords);
-		if (enableStemming) {
-			filter = new SnowballFilter(filter, new PorterStemmer());
-		}
-		filter = new NGramTokenFilter(filter, 1, 3);
-		
-		return new TokenStreamComponents(source, filter);
-
+	public void close()
+	{
+		release();
 	}
 
 	private boolean enableStemming;
 	@Override
 	public boolean hasNext() {
 		Assert.isTrue(opened, "TokenStream not opened!");
-		try {
-			return stream.incrementToken();
-		} catch (IOException e) {
-			throw new OperationFailedUnexpectedly(e);
+		if(!fetched)
+		{
+			try {
+				hasToken = stream != null && stream.incrementToken();
+			} catch (IOException e) {
+				throw new OperationFailedUnexpectedly(e);
+			}
+			fetched = true;
+			if(!hasToken)
+				release();
 		}
+		return hasToken;
 	}
 
 	@Override
 	public String next() {
-		try {
-			return stream.getAttribute(CharTermAttribute.class).toString();
-		} catch (NullPointerException e) {
+		if(!hasNext())
 			throw new NoSuchElementException();
-		}
+		fetched = false;
+		return term.toString();
 	}
 
 	public boolean isEnableStemming() {
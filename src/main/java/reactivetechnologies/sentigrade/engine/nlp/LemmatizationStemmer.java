@@ -18,7 +18,6 @@ package reactivetechnologies.sentigrade.engine.nlp;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Properties;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import edu.stanford.nlp.ling.CoreAnnotations.LemmaAnnotation;
@@ -27,7 +26,7 @@ import edu.stanford.nlp.ling.CoreAnnotations.SentencesAnnotation;
 import edu.stanford.nlp.ling.CoreAnnotations.TokensAnnotation;
 import edu.stanford.nlp.ling.CoreLabel;
 import edu.stanford.nlp.pipeline.Annotation;
-import edu.stanford.nlp.pipeline.StanfordCoreNLP;
+import edu.stanford.nlp.pipeline.AnnotationPipeline;
 import edu.stanford.nlp.util.CoreMap;
 import weka.core.stemmers.Stemmer;
 
@@ -37,13 +36,13 @@ public class LemmatizationStemmer implements Stemmer {
 	 * 
 	 */
 	private static final long serialVersionUID = 1L;
-	private static StanfordCoreNLP pipeline;
-	static {
-		Properties props = new Properties();
-		props.setProperty("annotators", "tokenize, ssplit, pos, lemma, ner");// ,
-																				// parse,
-																				// sentiment
-		pipeline = new StanfordCoreNLP(props);
+	/*
+	 * Loaded on first use. The tokenize, ssplit and pos annotators are shared with the sentiment analyzer.
+	 */
+	private static class PipelineHolder
+	{
+		private static final AnnotationPipeline pipeline = AnnotatorRegistry.getInstance().pipeline(AnnotatorRegistry.TOKENIZE,
+				AnnotatorRegistry.SSPLIT, AnnotatorRegistry.POS, AnnotatorRegistry.LEMMA, AnnotatorRegistry.NER);
 	}
 
 	public LemmatizationStemmer() {
@@ -72,7 +71,7 @@ public class LemmatizationStemmer implements Stemmer {
 		// create an empty Annotation just with the given text
 		Annotation document = new Annotation(word);
 		// run all Annotators on this text
-		pipeline.annotate(document);
+		PipelineHolder.pipeline.annotate(document);
 
 		// these are all the sentences in this document
 		// a CoreMap is essentially a Map that uses class objects as keys and
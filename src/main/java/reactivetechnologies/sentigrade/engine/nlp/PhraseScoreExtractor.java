@@ -0,0 +1,132 @@
+/**
+ * Copyright 2017 esutdal
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package reactivetechnologies.sentigrade.engine.nlp;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import edu.stanford.nlp.trees.PennTreebankLanguagePack;
+import edu.stanford.nlp.trees.Tree;
+import edu.stanford.nlp.trees.TreebankLanguagePack;
+
+/**
+ * Extracts the adjective, adverb, noun and verb scores of a parse tree, in a single traversal. 
+ * <p>
+ * The scores are the same as matching every <code>@ADJP</code> and <code>@VP</code> phrase, then every 
+ * part of speech node (for e.g. <code>@JJ</code>, <code>@RBR</code>, <code>@VBD</code>) within that phrase, 
+ * and summing up the lexicon scores of the leaves of each such node. So a leaf is counted once for every 
+ * (phrase, part of speech) pair of its ancestors. Instead of matching subtrees, the traversal carries the number 
+ * of enclosing phrases, and the number of such pairs per part of speech, down to the leaves.
+ * <p>
+ * Instances are stateless, and can be shared across threads.
+ * @author esutdal
+ *
+ */
+public class PhraseScoreExtractor {
+
+	private static final int PHRASE = 1, ADJ = 2, ADV = 4, NOUN = 8, VERB = 16;
+	private static final Map<String, Integer> CATEGORIES = new HashMap<>();
+	static
+	{
+		CATEGORIES.put("ADJP", PHRASE);
+		CATEGORIES.put("VP", PHRASE);
+		
+		CATEGORIES.put("JJ", ADJ);
+		CATEGORIES.put("JJR", ADJ);
+		CATEGORIES.put("JJS", ADJ);
+		
+		CATEGORIES.put("RB", ADV);
+		CATEGORIES.put("RBR", ADV);
+		CATEGORIES.put("RBS", ADV);
+		CATEGORIES.put("ADVP", ADV);
+		
+		CATEGORIES.put("NN", NOUN);
+		
+		CATEGORIES.put("VB", VERB);
+		CATEGORIES.put("VBD", VERB);
+		CATEGORIES.put("VBG", VERB);
+		CATEGORIES.put("VBZ", VERB);
+		CATEGORIES.put("VBN", VERB);
+		CATEGORIES.put("VBP", VERB);
+	}
+	//the same basic category function used by Tregex '@' matching
+	private final TreebankLanguagePack tlp = new PennTreebankLanguagePack();
+	private final SentimentLexicon lexicon;
+	/**
+	 * 
+	 * @param lexicon
+	 */
+	public PhraseScoreExtractor(SentimentLexicon lexicon) {
+		this.lexicon = lexicon;
+	}
+	
+	private int categoryOf(Tree node)
+	{
+		String value = node.value();
+		if(value == null)
+			return 0;
+		Integer c = CATEGORIES.get(tlp.basicCategory(value));
+		return c != null ? c : 0;
+	}
+	/**
+	 * Calculate the part of speech scores for the given parse tree. Only phrasal trees are scored.
+	 * @param parse
+	 * @return
+	 */
+	public SentimentVector extract(Tree parse)
+	{
+		SentimentVector vector = new SentimentVector();
+		if (parse.isPhrasal() && lexicon.isLoaded()) {
+			visit(parse, 0, 0, 0, 0, 0, vector);
+		}
+		return vector;
+	}
+	
+	private void visit(Tree node, int phrases, int adjPairs, int advPairs, int nounPairs, int verbPairs, SentimentVector vector)
+	{
+		int c = categoryOf(node);
+		if((c & PHRASE) != 0)
+			phrases++;
+		if((c & ADJ) != 0)
+			adjPairs += phrases;
+		if((c & ADV) != 0)
+			advPairs += phrases;
+		if((c & NOUN) != 0)
+			nounPairs += phrases;
+		if((c & VERB) != 0)
+			verbPairs += phrases;
+		
+		if(node.isLeaf())
+		{
+			String word = node.value();
+			if(word == null)
+				return;
+			if(adjPairs > 0)
+				vector.adjScore += adjPairs * lexicon.extract(word, SentimentLexicon.ADJ);
+			if(advPairs > 0)
+				vector.advScore += advPairs * lexicon.extract(word, SentimentLexicon.ADV);
+			if(nounPairs > 0)
+				vector.nounScore += nounPairs * lexicon.extract(word, SentimentLexicon.NOUN);
+			if(verbPairs > 0)
+				vector.verbScore += verbPairs * lexicon.extract(word, SentimentLexicon.VERB);
+			return;
+		}
+		for(Tree child : node.children())
+		{
+			visit(child, phrases, adjPairs, advPairs, nounPairs, verbPairs, vector);
+		}
+	}
+}
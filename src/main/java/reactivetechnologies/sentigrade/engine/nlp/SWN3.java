@@ -17,6 +17,7 @@ package reactivetechnologies.sentigrade.engine.nlp;
 
 import java.io.BufferedReader;
 import java.io.File;
+import java.io.FileNotFoundException;
 import java.io.FileReader;
 import java.io.IOException;
 import java.text.ParseException;
@@ -33,6 +34,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.util.Assert;
 import org.springframework.util.ResourceUtils;
+import org.springframework.util.StringUtils;
 
 import reactivetechnologies.sentigrade.utils.ConfigUtil;
 
@@ -42,9 +44,9 @@ import reactivetechnologies.sentigrade.utils.ConfigUtil;
  * @author esutdal
  *
  */
-class SWN3 {
+class SWN3 implements SentimentLexicon {
 
-	private final Map<String, Double> dictionary = new LinkedHashMap<>();
+	private volatile SentiWordTable table;
 	private final Map<String, Double> dictionary2 = new LinkedHashMap<>();
 
 	void approach2() throws Exception 
@@ -120,7 +122,7 @@ class SWN3 {
 
 	}
 
-	private Map<String, Map<Integer, Double>> readSynSet(BufferedReader csv) throws NumberFormatException, IOException, ParseException {
+	private static Map<String, Map<Integer, Double>> readSynSet(BufferedReader csv) throws NumberFormatException, IOException, ParseException {
 		int lineNumber = 0;
 		// From String to list of doubles.
 		Map<String, Map<Integer, Double>> tempDictionary = new HashMap<String, Map<Integer, Double>>();
@@ -173,7 +175,8 @@ class SWN3 {
 		return tempDictionary;
 	}
 
-	private void prepareTable(Map<String, Map<Integer, Double>> synonymSet) {
+	private static SentiWordTable prepareTable(Map<String, Map<Integer, Double>> synonymSet) {
+		SentiWordTable.Builder builder = new SentiWordTable.Builder(synonymSet.size());
 		// Go through all the terms.
 		for (Map.Entry<String, Map<Integer, Double>> entry : synonymSet.entrySet()) {
 			String word = entry.getKey();
@@ -191,31 +194,71 @@ class SWN3 {
 			}
 			score /= sum;
 
-			dictionary.put(word, score);
+			int i = word.lastIndexOf('#');
+			if(i == word.length() - 2)
+				builder.put(word.substring(0, i), word.charAt(i+1), score);
 		}
+		return builder.build();
 	}
 
 	private static final Logger log = LoggerFactory.getLogger(SWN3.class);
 
 	private String dbFile = "SentiWordNet_3.0.0.txt";
-	private void load0() throws IOException {
-		// This is our main dictionary representation
-		dictionary.clear();
-		loaded = false;
+	private String snapshotFile;
+	/**
+	 * Default suffix of the binary snapshot file, next to the text file.
+	 */
+	public static final String SNAPSHOT_SUFFIX = ".bin";
+	
+	private static File resolveOrNull(String path)
+	{
+		try {
+			return ConfigUtil.resolvePath(path);
+		} catch (FileNotFoundException e) {
+			return null;
+		}
+	}
+	private File snapshotFor(File source)
+	{
+		if(StringUtils.hasText(snapshotFile))
+		{
+			File f = resolveOrNull(snapshotFile);
+			return f != null ? f : new File(snapshotFile);
+		}
+		if(source != null)
+			return new File(source.getPath() + SNAPSHOT_SUFFIX);
+		return resolveOrNull(dbFile + SNAPSHOT_SUFFIX);
+	}
+	/*
+	 * Map the binary snapshot, if present and not older than the text file.
+	 */
+	private SentiWordTable loadSnapshot(File source)
+	{
+		File snapshot = snapshotFor(source);
+		if(snapshot == null || !snapshot.exists())
+			return null;
+		try 
+		{
+			SentiWordTable t = source != null ? SentiWordTable.map(snapshot, source.length(), source.lastModified())
+					: SentiWordTable.map(snapshot, -1, -1);
+			if(t == null)
+				log.warn("SentiWordNet snapshot is stale, will load from text file. Recompile "+snapshot);
+			return t;
+		} 
+		catch (IOException e) {
+			log.warn("Unable to map SentiWordNet snapshot "+snapshot+". Will load from text file", e);
+			return null;
+		}
+	}
+	private static SentiWordTable parse(File f) throws IOException {
 		BufferedReader csv = null;
 		try {
-			File f = ConfigUtil.resolvePath(dbFile);
 			Assert.isTrue(f.exists(), "Internal error! SentiWordNet_3.0.0.txt does not exist ");
 			Assert.isTrue(f.canRead(), "Internal error! SentiWordNet_3.0.0.txt not readable");
 			csv = new BufferedReader(new FileReader(f));
 
 			Map<String, Map<Integer, Double>> synonymSet = readSynSet(csv);
-			prepareTable(synonymSet);
-			loaded = true;
-			log.info("SentiWordNet loaded..");
-			
-			//approach2();
-			
+			return prepareTable(synonymSet);
 		} 
 		catch (IOException e) {
 			throw e;
@@ -231,9 +274,50 @@ class SWN3 {
 			}
 		}
 	}
+	private void load0() throws IOException {
+		// This is our main dictionary representation. The new table is built fully before it is
+		// published, so that a forced reload never exposes an unloaded state to the readers
+		File f = resolveOrNull(dbFile);
+		SentiWordTable t = loadSnapshot(f);
+		if(t != null)
+		{
+			publish(t);
+			log.info("SentiWordNet loaded from snapshot.. "+t.size()+" words");
+			return;
+		}
+		if(f == null)
+			throw new FileNotFoundException(dbFile);
+		
+		t = parse(f);
+		publish(t);
+		log.info("SentiWordNet loaded.. "+t.size()+" words");
+		
+		//approach2();
+	}
+	/**
+	 * Compile the SentiWordNet text file into a binary snapshot, that can be memory mapped on load.
+	 * @param source
+	 * @param target
+	 * @throws IOException
+	 */
+	public static void compile(File source, File target) throws IOException
+	{
+		SentiWordTable t = parse(source);
+		t.writeTo(target, source.length(), source.lastModified());
+		log.info("SentiWordNet snapshot of "+t.size()+" words written to "+target);
+	}
 
 	private volatile boolean loaded;
+	/*
+	 * Table is written before the flag, and the flag is never cleared once set.
+	 */
+	private void publish(SentiWordTable t)
+	{
+		table = t;
+		loaded = true;
+	}
 
+	@Override
 	public boolean isLoaded() {
 		return loaded;
 	}
@@ -251,6 +335,13 @@ class SWN3 {
 	public SWN3(String dbFile) {
 		this.dbFile = dbFile;
 	}
+	/**
+	 * Path of the binary snapshot. By default it is the text file path with {@value #SNAPSHOT_SUFFIX} suffix.
+	 * @param snapshotFile
+	 */
+	public void setSnapshotFile(String snapshotFile) {
+		this.snapshotFile = snapshotFile;
+	}
 
 	public static final String NEUTRAL_SENTI = "neutral";
 	public static final String STRONG_POS_SENTI = "strong_positive";
@@ -298,15 +389,25 @@ class SWN3 {
 	}
 
 	public double extract(String word, String pos) {
+		return pos.length() == 1 ? extract((CharSequence) word, pos.charAt(0)) : 0.0;
+	}
+	@Override
+	public double extract(CharSequence word, char pos) {
 		Assert.isTrue(loaded, "Data not loaded!");
-		String key = word.replaceAll("([^a-zA-Z\\s])", "") + "#" + pos;
-		//System.out.println("Contains "+key+"? "+dictionary.containsKey(key));
-		return dictionary.containsKey(key) ? dictionary.get(key) : 0.0;
+		return table.get(word, pos);
+	}
+	@Override
+	public void extract(List<? extends CharSequence> words, char[] pos, double[] scores) {
+		Assert.isTrue(loaded, "Data not loaded!");
+		SentiWordTable t = table;
+		for (int i = 0; i < words.size(); i++) {
+			scores[i] = pos[i] == 0 ? 0.0 : t.get(words.get(i), pos[i]);
+		}
 	}
 	private double extract2(String word, String pos) {
 		Assert.isTrue(loaded, "Data not loaded!");
 		String key = word.replaceAll("([^a-zA-Z\\s])", "") + "#" + pos;
-		return dictionary2.containsKey(key) ? dictionary.get(key) : 0.0;
+		return dictionary2.containsKey(key) ? extract(word, pos) : 0.0;
 	}
 
 	public String extractClass(String word, String pos) {
@@ -355,10 +456,17 @@ class SWN3 {
 	public double extractNoun(String word) {
 		return extract(word, "n");
 	}
+	/**
+	 * Offline compile of the binary snapshot.
+	 * <pre>SWN3 [source txt] [target bin]</pre>
+	 * @param args
+	 * @throws IOException
+	 */
 	public static void main(String[] args) throws IOException {
 
-		SWN3 sentiwordnet = new SWN3();
-		sentiwordnet.load();
+		File source = ConfigUtil.resolvePath(args.length > 0 ? args[0] : "SentiWordNet_3.0.0.txt");
+		File target = args.length > 1 ? new File(args[1]) : new File(source.getPath() + SNAPSHOT_SUFFIX);
+		compile(source, target);
 		/*SWN3 sentiwordnet = new SWN3();
 		sentiwordnet.load();
 		System.out.println("good#a " + sentiwordnet.extractClass("good", "a"));
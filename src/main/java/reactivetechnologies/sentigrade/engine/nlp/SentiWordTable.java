@@ -0,0 +1,386 @@
+/**
+ * Copyright 2017 esutdal
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package reactivetechnologies.sentigrade.engine.nlp;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * A compact, read only lookup table of word polarity scores, one <code>double[]</code> per part of speech. The words
+ * are kept in a single <code>char[]</code> pool, and indexed by an open addressing (linear probing) hash.
+ * <p>
+ * Lookups work directly on a {@linkplain CharSequence}. Characters other than letters and whitespace are skipped while
+ * hashing and comparing, which is equivalent to stripping them with <code>[^a-zA-Z\s]</code> before the lookup, without 
+ * allocating. Words in the source having any other character can never be looked up that way, hence are not stored.
+ * <p>
+ * The arrays are accessed as buffers, so that a table can be either built on heap, or mapped from a binary snapshot 
+ * file written by {@link #writeTo(File, long, long)}, without copying.
+ * @author esutdal
+ *
+ */
+public final class SentiWordTable {
+
+	static final char[] POS = {SentimentLexicon.NOUN, SentimentLexicon.ADJ, SentimentLexicon.ADV, SentimentLexicon.VERB};
+	/**
+	 * Index of the part of speech in the score arrays, or -1.
+	 * @param pos
+	 * @return
+	 */
+	static int posIndex(char pos)
+	{
+		switch(pos)
+		{
+			case SentimentLexicon.NOUN: return 0;
+			case SentimentLexicon.ADJ: return 1;
+			case SentimentLexicon.ADV: return 2;
+			case SentimentLexicon.VERB: return 3;
+			default: return -1;
+		}
+	}
+	static boolean isKeyChar(char c)
+	{
+		return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || c == ' ' || c == '\t' || c == '\n' || c == '\u000B'
+				|| c == '\f' || c == '\r';
+	}
+	static int hash(CharSequence word)
+	{
+		int h = 0;
+		for (int i = 0; i < word.length(); i++) {
+			char c = word.charAt(i);
+			if(isKeyChar(c))
+				h = 31 * h + c;
+		}
+		return mix(h);
+	}
+	static int hash(char[] chars, int offset, int length)
+	{
+		int h = 0;
+		for (int i = offset; i < offset + length; i++) {
+			h = 31 * h + chars[i];
+		}
+		return mix(h);
+	}
+	private static int mix(int h)
+	{
+		h ^= h >>> 16;
+		h *= 0x85ebca6b;
+		h ^= h >>> 13;
+		h *= 0xc2b2ae35;
+		h ^= h >>> 16;
+		return h;
+	}
+	
+	private final CharBuffer pool;
+	private final IntBuffer offsets;
+	private final IntBuffer slots;
+	private final DoubleBuffer[] scores;
+	private final int size;
+	private final int mask;
+	
+	private SentiWordTable(CharBuffer pool, IntBuffer offsets, IntBuffer slots, DoubleBuffer[] scores, int size) {
+		this.pool = pool;
+		this.offsets = offsets;
+		this.slots = slots;
+		this.scores = scores;
+		this.size = size;
+		this.mask = slots.limit() - 1;
+	}
+	SentiWordTable(char[] pool, int[] offsets, int[] slots, double[][] scores, int size) {
+		this(CharBuffer.wrap(pool), IntBuffer.wrap(offsets), IntBuffer.wrap(slots), wrap(scores), size);
+	}
+	private static DoubleBuffer[] wrap(double[][] scores)
+	{
+		DoubleBuffer[] b = new DoubleBuffer[scores.length];
+		for (int i = 0; i < b.length; i++) {
+			b[i] = DoubleBuffer.wrap(scores[i]);
+		}
+		return b;
+	}
+	/**
+	 * Number of distinct words.
+	 * @return
+	 */
+	public int size() {
+		return size;
+	}
+	
+	private boolean matches(int entry, CharSequence word)
+	{
+		int p = offsets.get(entry), end = offsets.get(entry+1);
+		for (int i = 0; i < word.length(); i++) {
+			char c = word.charAt(i);
+			if(!isKeyChar(c))
+				continue;
+			if(p == end || pool.get(p++) != c)
+				return false;
+		}
+		return p == end;
+	}
+	/**
+	 * Find the entry index of the word, or -1.
+	 * @param word
+	 * @return
+	 */
+	int indexOf(CharSequence word)
+	{
+		for (int i = hash(word) & mask;; i = (i + 1) & mask) {
+			int entry = slots.get(i);
+			if(entry < 0)
+				return -1;
+			if(matches(entry, word))
+				return entry;
+		}
+	}
+	/**
+	 * Score of the word for the part of speech, or 0.
+	 * @param word
+	 * @param pos
+	 * @return
+	 */
+	public double get(CharSequence word, char pos)
+	{
+		int p = posIndex(pos);
+		if(p < 0)
+			return 0.0;
+		int entry = indexOf(word);
+		return entry < 0 ? 0.0 : scores[p].get(entry);
+	}
+	
+	static final int MAGIC = 0x53574E33;
+	static final int VERSION = 1;
+	//magic, version, source length, source modified, size, pool size, slots
+	private static final int HEADER_BYTES = 4 + 4 + 8 + 8 + 4 + 4 + 4;
+	
+	private static long snapshotBytes(int size, int poolSize, int slotCount)
+	{
+		return HEADER_BYTES + 2L * poolSize + 4L * (size + 1) + 4L * slotCount + 8L * POS.length * size;
+	}
+	/**
+	 * Write a binary snapshot of this table, stamped with the length and modified time of the source 
+	 * it was built from. The file is written to a temporary file first, and then moved in place.
+	 * @param file
+	 * @param sourceLength
+	 * @param sourceModified
+	 * @throws IOException
+	 */
+	public void writeTo(File file, long sourceLength, long sourceModified) throws IOException
+	{
+		int poolSize = pool.limit(), slotCount = slots.limit();
+		ByteBuffer buf = ByteBuffer.allocate((int) snapshotBytes(size, poolSize, slotCount));
+		buf.putInt(MAGIC).putInt(VERSION).putLong(sourceLength).putLong(sourceModified)
+		.putInt(size).putInt(poolSize).putInt(slotCount);
+		
+		for (int i = 0; i < poolSize; i++) {
+			buf.putChar(pool.get(i));
+		}
+		for (int i = 0; i <= size; i++) {
+			buf.putInt(offsets.get(i));
+		}
+		for (int i = 0; i < slotCount; i++) {
+			buf.putInt(slots.get(i));
+		}
+		for (DoubleBuffer d : scores) {
+			for (int i = 0; i < size; i++) {
+				buf.putDouble(d.get(i));
+			}
+		}
+		buf.flip();
+		
+		File dir = file.getAbsoluteFile().getParentFile();
+		File tmp = File.createTempFile(file.getName(), ".tmp", dir);
+		try
+		{
+			try(FileChannel ch = new FileOutputStream(tmp).getChannel())
+			{
+				while(buf.hasRemaining())
+					ch.write(buf);
+				ch.force(true);
+			}
+			Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		}
+		finally
+		{
+			tmp.delete();
+		}
+	}
+	/**
+	 * Map a binary snapshot file, if it is not stale with respect to the source.
+	 * @param file
+	 * @param sourceLength length of the source, or -1 to skip the staleness check
+	 * @param sourceModified
+	 * @return the table, or null if the snapshot is stale
+	 * @throws IOException if the file is not a valid snapshot
+	 */
+	public static SentiWordTable map(File file, long sourceLength, long sourceModified) throws IOException
+	{
+		MappedByteBuffer buf;
+		try(FileChannel ch = FileChannel.open(file.toPath(), StandardOpenOption.READ))
+		{
+			if(ch.size() < HEADER_BYTES)
+				throw new IOException("Not a SentiWordNet snapshot: "+file);
+			buf = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+		}
+		if(buf.getInt() != MAGIC)
+			throw new IOException("Not a SentiWordNet snapshot: "+file);
+		if(buf.getInt() != VERSION)
+			return null;
+		long length = buf.getLong(), modified = buf.getLong();
+		if(sourceLength >= 0 && (length != sourceLength || modified != sourceModified))
+			return null;
+		
+		int size = buf.getInt(), poolSize = buf.getInt(), slotCount = buf.getInt();
+		if(buf.capacity() != snapshotBytes(size, poolSize, slotCount) || Integer.bitCount(slotCount) != 1)
+			throw new IOException("Corrupt SentiWordNet snapshot: "+file);
+		
+		CharBuffer pool = slice(buf, 2 * poolSize).asCharBuffer();
+		IntBuffer offsets = slice(buf, 4 * (size + 1)).asIntBuffer();
+		IntBuffer slots = slice(buf, 4 * slotCount).asIntBuffer();
+		DoubleBuffer[] scores = new DoubleBuffer[POS.length];
+		for (int i = 0; i < scores.length; i++) {
+			scores[i] = slice(buf, 8 * size).asDoubleBuffer();
+		}
+		return new SentiWordTable(pool, offsets, slots, scores, size);
+	}
+	private static ByteBuffer slice(ByteBuffer buf, int bytes)
+	{
+		ByteBuffer b = buf.slice();
+		b.limit(bytes);
+		buf.position(buf.position() + bytes);
+		return b;
+	}
+	
+	/**
+	 * Incrementally add words, then build a table.
+	 */
+	public static class Builder
+	{
+		private char[] pool;
+		private int poolSize = 0;
+		private int[] offsets;
+		private int[] slots;
+		private double[][] scores = new double[POS.length][];
+		private int size = 0;
+		
+		public Builder(int expected) {
+			int cap = Math.max(16, expected);
+			pool = new char[cap * 8];
+			offsets = new int[cap + 1];
+			for (int i = 0; i < scores.length; i++) {
+				scores[i] = new double[cap];
+			}
+			slots = newSlots(cap);
+		}
+		private static int[] newSlots(int entries)
+		{
+			int n = Integer.highestOneBit(Math.max(16, entries * 2 - 1)) << 1;
+			int[] s = new int[n];
+			Arrays.fill(s, -1);
+			return s;
+		}
+		private int indexOf(String word)
+		{
+			int mask = slots.length - 1;
+			for (int i = hash(word) & mask;; i = (i + 1) & mask) {
+				int entry = slots[i];
+				if(entry < 0)
+					return -1 - i;
+				if(equals(entry, word))
+					return entry;
+			}
+		}
+		private boolean equals(int entry, String word)
+		{
+			int p = offsets[entry];
+			if(offsets[entry+1] - p != word.length())
+				return false;
+			for (int i = 0; i < word.length(); i++) {
+				if(pool[p+i] != word.charAt(i))
+					return false;
+			}
+			return true;
+		}
+		private void rehash()
+		{
+			slots = newSlots(offsets.length);
+			int mask = slots.length - 1;
+			for (int e = 0; e < size; e++) {
+				int i = hash(pool, offsets[e], offsets[e+1] - offsets[e]) & mask;
+				while(slots[i] >= 0)
+					i = (i + 1) & mask;
+				slots[i] = e;
+			}
+		}
+		/**
+		 * Add a score. Words having characters that are skipped in lookup, are ignored.
+		 * @param word
+		 * @param pos
+		 * @param score
+		 * @return if added
+		 */
+		public boolean put(String word, char pos, double score)
+		{
+			int p = posIndex(pos);
+			if(p < 0 || word.isEmpty())
+				return false;
+			for (int i = 0; i < word.length(); i++) {
+				if(!isKeyChar(word.charAt(i)))
+					return false;
+			}
+			int entry = indexOf(word);
+			if(entry < 0)
+			{
+				if(size + 1 == offsets.length)
+				{
+					offsets = Arrays.copyOf(offsets, offsets.length * 2);
+					for (int i = 0; i < scores.length; i++) {
+						scores[i] = Arrays.copyOf(scores[i], offsets.length);
+					}
+					rehash();
+					entry = indexOf(word);
+				}
+				if(poolSize + word.length() > pool.length)
+					pool = Arrays.copyOf(pool, Math.max(pool.length * 2, poolSize + word.length()));
+				
+				word.getChars(0, word.length(), pool, poolSize);
+				poolSize += word.length();
+				slots[-1 - entry] = size;
+				entry = size++;
+				offsets[size] = poolSize;
+			}
+			scores[p][entry] = score;
+			return true;
+		}
+		public SentiWordTable build()
+		{
+			double[][] s = new double[scores.length][];
+			for (int i = 0; i < s.length; i++) {
+				s[i] = Arrays.copyOf(scores[i], size);
+			}
+			return new SentiWordTable(Arrays.copyOf(pool, poolSize), Arrays.copyOf(offsets, size + 1), slots, s, size);
+		}
+	}
+}
@@ -16,17 +16,31 @@
 package reactivetechnologies.sentigrade.engine.nlp;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
-import java.util.Properties;
+import java.util.NoSuchElementException;
+import java.util.Set;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.Callable;
-import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.annotation.PostConstruct;
 import javax.annotation.PreDestroy;
@@ -42,17 +56,17 @@ import org.springframework.util.StringUtils;
 import edu.stanford.nlp.ling.CoreAnnotations;
 import edu.stanford.nlp.ling.CoreLabel;
 import edu.stanford.nlp.ling.Label;
-import edu.stanford.nlp.ling.LabeledWord;
 import edu.stanford.nlp.neural.rnn.RNNCoreAnnotations;
 import edu.stanford.nlp.pipeline.Annotation;
-import edu.stanford.nlp.pipeline.StanfordCoreNLP;
+import edu.stanford.nlp.pipeline.AnnotationPipeline;
 import edu.stanford.nlp.sentiment.SentimentCoreAnnotations;
 import edu.stanford.nlp.trees.Tree;
-import edu.stanford.nlp.trees.tregex.TregexMatcher;
-import edu.stanford.nlp.trees.tregex.TregexPattern;
 import edu.stanford.nlp.util.CoreMap;
 import reactivetechnologies.sentigrade.dto.RequestData.Tuple;
 import reactivetechnologies.sentigrade.engine.ClassificationModelEngine;
+import reactivetechnologies.sentigrade.engine.nlp.SentimentVector.Tier;
+import reactivetechnologies.sentigrade.err.OperationFailedUnexpectedly;
+import reactivetechnologies.sentigrade.utils.ConfigUtil;
 import weka.core.DenseInstance;
 import weka.core.Instance;
 import weka.core.Instances;
@@ -66,9 +80,29 @@ public class SentimentAnalyzer {
 
 	private static final Logger LOG = LoggerFactory.getLogger(SentimentAnalyzer.class);
 	// http://www.comp.leeds.ac.uk/amalgam/tagsets/upenn.html -- tagger codes
-
-	private StanfordCoreNLP sentimentPipeline, tokenizerPipeline;
+	static final Set<String> ADJ_TAGS = new HashSet<>(Arrays.asList("JJ", "JJR", "JJS"));
+	static final Set<String> ADV_TAGS = new HashSet<>(Arrays.asList("RB", "RBR", "RBS"));
+	static final Set<String> NOUN_TAGS = new HashSet<>(Arrays.asList("NN"));
+	static final Set<String> VERB_TAGS = new HashSet<>(Arrays.asList("VB", "VBD", "VBG", "VBZ", "VBN", "VBP"));
+
+	/*
+	 * A pipeline instance per worker thread. The underlying annotators (and models) are loaded once, and shared
+	 * from the annotator registry.
+	 */
+	private final ThreadLocal<AnnotationPipeline> sentimentPipelines = new ThreadLocal<AnnotationPipeline>(){
+		@Override
+		protected AnnotationPipeline initialValue() {
+			return AnnotatorRegistry.getInstance().pipeline(AnnotatorRegistry.PARSE, AnnotatorRegistry.SENTIMENT);
+		}
+	};
+	private final ThreadLocal<AnnotationPipeline> tokenizerPipelines = new ThreadLocal<AnnotationPipeline>(){
+		@Override
+		protected AnnotationPipeline initialValue() {
+			return AnnotatorRegistry.getInstance().pipeline(AnnotatorRegistry.TOKENIZE, AnnotatorRegistry.SSPLIT, AnnotatorRegistry.POS);
+		}
+	};
 	private SWN3 sentiNet;
+	private PhraseScoreExtractor posExtractor;
 	private volatile boolean initialized;
 	@Value("${snlp.analyzer.enablePrint:false}")
 	private boolean printNormalized;
@@ -79,54 +113,83 @@ public class SentimentAnalyzer {
 	private long timeout;
 	@Value("${snlp.analyzer.sentinet.path:}")
 	private String sentiFile;
+	@Value("${snlp.analyzer.sentinet.snapshot.path:}")
+	private String sentiSnapshotFile;
+	@Value("${snlp.analyzer.cache.enable:true}")
+	private boolean cacheEnabled;
+	@Value("${snlp.analyzer.cache.maxEntries:10000}")
+	private int cacheMaxEntries;
+	@Value("${snlp.analyzer.cache.maxTextLength:2000}")
+	private int cacheMaxTextLength;
+	@Value("${snlp.analyzer.cache.ignoreCase:false}")
+	private boolean cacheIgnoreCase;
+	private SentimentVectorCache vectorCache;
+	@Value("${snlp.analyzer.tiered.deadlineMillis:0}")
+	private long deadlineMillis;
+	@Value("${snlp.analyzer.tiered.maxTextLength:0}")
+	private int tieredMaxTextLength;
+	@Value("${snlp.analyzer.builder.threads:0}")
+	private int builderThreadCount;
+	@Value("${snlp.analyzer.builder.ordered:false}")
+	private boolean builderOrdered;
+	@Value("${snlp.analyzer.builder.window:0}")
+	private int builderWindow;
 	@PostConstruct
 	private void initialize()
 	{
-		Properties pipelineProps = new Properties();
-		Properties tokenizerProps = new Properties();
-
-		pipelineProps.setProperty("annotators", "parse, sentiment");
-		pipelineProps.setProperty("enforceRequirements", "false");
-
-		tokenizerProps.setProperty("annotators", "tokenize, ssplit, pos");
-		// tokenizerProps.setProperty(StanfordCoreNLP.NEWLINE_SPLITTER_PROPERTY,
-		// "true");
-
-		sentimentPipeline = new StanfordCoreNLP(pipelineProps);
-		tokenizerPipeline = new StanfordCoreNLP(tokenizerProps);
+		//load the models upfront, in parallel
+		try {
+			AnnotatorRegistry.getInstance().preload(AnnotatorRegistry.TOKENIZE, AnnotatorRegistry.SSPLIT, AnnotatorRegistry.POS,
+					AnnotatorRegistry.PARSE, AnnotatorRegistry.SENTIMENT);
+		} catch (IllegalStateException e) {
+			throw new BeanInitializationException("Unable to load CoreNLP annotators! ", e);
+		}
 
 		sentiNet = StringUtils.hasText(sentiFile) ? new SWN3(sentiFile) : new SWN3();
+		sentiNet.setSnapshotFile(sentiSnapshotFile);
 		try {
 			sentiNet.load();
 		} catch (IOException e) {
 			throw new BeanInitializationException("Unable to load SentiNet dictionary! ", e);
 		}
+		posExtractor = new PhraseScoreExtractor(sentiNet);
 		threads = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
-		annotatorThreads = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+		annotatorThreads = new ForkJoinPool(threads, new ForkJoinPool.ForkJoinWorkerThreadFactory() {
 			int n = 0;
 			@Override
-			public Thread newThread(Runnable r) {
-				Thread t = new Thread(r, "AnnotatorThread-"+(n++));
+			public synchronized ForkJoinWorkerThread newThread(ForkJoinPool pool) {
+				ForkJoinWorkerThread t = new ForkJoinWorkerThread(pool) {};
+				t.setName("AnnotatorThread-"+(n++));
 				t.setDaemon(true);
 				return t;
 			}
-		});
+		}, null, true);
 		
-		builderThreads = Executors.newSingleThreadExecutor(new ThreadFactory() {
+		builderThreadCount = builderThreadCount > 0 ? builderThreadCount : Runtime.getRuntime().availableProcessors();
+		builderWindow = builderWindow > 0 ? builderWindow : 4 * builderThreadCount;
+		builderThreads = Executors.newFixedThreadPool(builderThreadCount, new ThreadFactory() {
+			int n = 0;
 			@Override
 			public Thread newThread(Runnable r) {
-				Thread t = new Thread(r, "AnnotBuilderThread");
+				Thread t = new Thread(r, "AnnotBuilderThread-"+(n++));
 				t.setDaemon(true);
 				return t;
 			}
 		});
 		
+		if(cacheEnabled)
+		{
+			vectorCache = new SentimentVectorCache(cacheMaxEntries, cacheMaxTextLength, cacheIgnoreCase);
+			LOG.info("Sentiment vectors will be cached. Max entries: "+cacheMaxEntries);
+		}
 		initialized = true;
-		LOG.info("SentimentAnalyzer initialization complete");
+		LOG.info("SentimentAnalyzer initialization complete. Annotator threads: "+threads+", builder threads: "+builderThreadCount);
 	}
 	@PreDestroy
 	private void onDestroy()
 	{
+		if(vectorCache != null)
+			LOG.info(""+vectorCache);
 		annotatorThreads.shutdown();
 		builderThreads.shutdown();
 	}
@@ -196,7 +259,7 @@ public class SentimentAnalyzer {
 		final Tree sentiTree = sentence.get(SentimentCoreAnnotations.SentimentAnnotatedTree.class);
 		print(sentiTree);
 		
-		SentimentVector weights = calculatePOSScores(sentiTree);
+		SentimentVector weights = posExtractor.extract(sentiTree);
 		weights.overallScore = normalizedPrediction(sentiTree);
 
 		String senti = sentence.get(SentimentCoreAnnotations.SentimentClass.class);
@@ -209,7 +272,7 @@ public class SentimentAnalyzer {
 	}
 
 	private Sentiments annotateSentence(Annotation annotation) {
-		sentimentPipeline.annotate(annotation);
+		sentimentPipelines.get().annotate(annotation);
 		Sentiments sentiments = new Sentiments();
 		for (CoreMap sentence : annotation.get(CoreAnnotations.SentencesAnnotation.class)) {
 			
@@ -226,7 +289,8 @@ public class SentimentAnalyzer {
 	 * @return
 	 */
 	Sentiments annotateSentiments(String document) {
-		Annotation annot = sentimentPipeline.process(document);
+		Annotation annot = new Annotation(document);
+		sentimentPipelines.get().annotate(annot);
 		Sentiments sentiments = new Sentiments();
 		for (CoreMap sentence : annot.get(CoreAnnotations.SentencesAnnotation.class)) {
 			
@@ -239,411 +303,563 @@ public class SentimentAnalyzer {
 	}
 	
 	/**
-	 * Get a vectorized form of sentiment/opinion.
+	 * Get a vectorized form of sentiment/opinion. This is always a full analysis, irrespective of the tiered settings, 
+	 * and should be used for vectorizing training data.
 	 * @param text
 	 * @return {@linkplain SentimentVector}
 	 */
 	public SentimentVector getSentiment(String text) {
+		return getSentiment(text, 0, false);
+	}
+	/**
+	 * Get a vectorized form of sentiment/opinion, within a deadline. If the full parse does not complete within the deadline,
+	 * or the text is longer than the configured threshold, the vector is computed from SentiNet word weights of the POS tagged tokens. 
+	 * The tier which produced the vector is marked in {@linkplain SentimentVector#getTier()}.
+	 * <p>
+	 * Lexicon vectors are on a different scale than full ones, hence this is meant for classification requests only.
+	 * @param text
+	 * @param deadlineMillis max time to wait for the full parse. 0 or less to use the configured deadline
+	 * @return {@linkplain SentimentVector}
+	 */
+	public SentimentVector getTieredSentiment(String text, long deadlineMillis) {
+		return getSentiment(text, deadlineMillis > 0 ? deadlineMillis : this.deadlineMillis, true);
+	}
+	private SentimentVector getSentiment(String text, long deadlineMillis, boolean tiered) {
 		Assert.isTrue(initialized, "Not initialized!");
+		Long key = vectorCache != null ? vectorCache.keyFor(text) : null;
+		if(key != null)
+		{
+			SentimentVector cached = vectorCache.get(key);
+			if(cached != null)
+				return cached;
+		}
 		LOG.debug("Analyzing text > '"+text+"'");
-		Sentiments vector = calculate(text);
+		Sentiments vector = calculate(text, deadlineMillis, tiered);
 		if (LOG.isDebugEnabled()) {
 			LOG.debug("Analysis complete. Final Score: " + vector);
 		}
+		if(key != null && vector.isComplete() && vector.getTier() == Tier.FULL)
+			vectorCache.put(key, vector);
+		
 		return vector;
 	}
-	private double calcPOSNoun(Tree parse) {
-
-		TregexPattern pattern = TregexPattern.compile("@NN");
-		TregexMatcher matcher = pattern.matcher(parse);
-		double score = 0.0;
-		while (matcher.find()) {
-			Tree match = matcher.getMatch();
-			List<Tree> leaves = match.getLeaves();
-
-			if (sentiNet.isLoaded()) {
-				for (Tree t : leaves)
-					score += sentiNet.extractNoun(t + "");
-
-			}
-			List<LabeledWord> labeledYield = match.labeledYield();
-			LOG.debug("Noun Labels: " + labeledYield);
-		}
-		
-		LOG.debug("Sentinet: " + score);
-
-		return score;
+	/**
+	 * The sentiment vector cache, if enabled.
+	 * @return cache or null
+	 */
+	public SentimentVectorCache getVectorCache() {
+		return vectorCache;
 	}
+	private ForkJoinPool annotatorThreads;
+	private ExecutorService builderThreads;
 	
-	private double calcPOSAdv(Tree parse) {
-
-		TregexPattern pattern = TregexPattern.compile("@RB");
-		TregexMatcher matcher = pattern.matcher(parse);
-		double score = 0.0;
-		while (matcher.find()) {
-			Tree match = matcher.getMatch();
-			List<Tree> leaves = match.getLeaves();
-
-			if (sentiNet.isLoaded()) {
-				for (Tree t : leaves)
-					score += sentiNet.extractAdv(t + "");
-
+	private Sentiments annotateSentences(Annotation tokenized, long deadlineMillis)
+	{
+		Sentiments sentiments = new Sentiments();
+		List<CoreMap> sentences = tokenized.get(CoreAnnotations.SentencesAnnotation.class);
+		DocumentTask task = new DocumentTask(sentences, sentiments);
+		if(deadlineMillis > 0)
+		{
+			annotatorThreads.execute(task);
+			if(!awaitDocument(task, deadlineMillis))
+			{
+				task.cancel(false);
+				LOG.debug("Analysis deadline of "+deadlineMillis+" ms exceeded. Falling back to lexicon scoring");
+				return lexiconSentences(tokenized);
 			}
-			List<LabeledWord> labeledYield = match.labeledYield();
-			LOG.debug("Adv Labels: " + labeledYield);
 		}
-
-		pattern = TregexPattern.compile("@RBR");
-		matcher = pattern.matcher(parse);
-		while (matcher.find()) {
-			Tree match = matcher.getMatch();
-			List<Tree> leaves = match.getLeaves();
-			if (sentiNet.isLoaded()) {
-				for (Tree t : leaves)
-					score += sentiNet.extractAdv(t + "");
-
-			}
-			// System.out.println("Adj: " + leaves);
-			List<LabeledWord> labeledYield = match.labeledYield();
-			LOG.debug("Adv Labels: " + labeledYield);
+		else if(sentences.size() <= 1)
+		{
+			//no hand-off for a single sentence
+			task.invoke();
 		}
-
-		pattern = TregexPattern.compile("@RBS");
-		matcher = pattern.matcher(parse);
-		while (matcher.find()) {
-			Tree match = matcher.getMatch();
-			List<Tree> leaves = match.getLeaves();
-			if (sentiNet.isLoaded()) {
-				for (Tree t : leaves)
-					score += sentiNet.extractAdv(t + "");
-
-			}
-			List<LabeledWord> labeledYield = match.labeledYield();
-			LOG.debug("Adv Labels: " + labeledYield);
+		else
+		{
+			annotatorThreads.execute(task);
+			sentiments.setComplete(awaitDocument(task));
 		}
 		
-		pattern = TregexPattern.compile("@ADVP");
-		matcher = pattern.matcher(parse);
-		while (matcher.find()) {
-			Tree match = matcher.getMatch();
-			List<Tree> leaves = match.getLeaves();
-			if (sentiNet.isLoaded()) {
-				for (Tree t : leaves)
-					score += sentiNet.extractAdv(t + "");
-
-			}
-			List<LabeledWord> labeledYield = match.labeledYield();
-			LOG.debug("Adv Labels: " + labeledYield);
-		}
+		sentiments.normalize();
+		return sentiments;
+	}
+	private long defaultAwaitMillis()
+	{
+		return timeout > 0 ? TimeUnit.SECONDS.toMillis(timeout) : Long.MAX_VALUE;
+	}
+	private boolean awaitDocument(ForkJoinTask<?> task)
+	{
+		boolean done = awaitDocument(task, defaultAwaitMillis());
+		if(!done)
+			LOG.warn("Analyzer did not complete in stipulated amount of time!");
 		
-		LOG.debug("Sentinet: " + score);
-
-		return score;
+		return done;
 	}
-	
-	private double calcPOSVerb(Tree parse) {
-
-		TregexPattern pattern = TregexPattern.compile("@VB");
-		TregexMatcher matcher = pattern.matcher(parse);
-		double score = 0.0;
-		while (matcher.find()) {
-			Tree match = matcher.getMatch();
-			List<Tree> leaves = match.getLeaves();
-
-			if (sentiNet.isLoaded()) {
-				for (Tree t : leaves)
-					score += sentiNet.extractVerb(t + "");
-
+	private boolean awaitDocument(ForkJoinTask<?> task, long millis)
+	{
+		try 
+		{
+			if(millis == Long.MAX_VALUE)
+				task.get();
+			else
+				task.get(millis, unit);
+			return true;
+		} 
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} 
+		catch (ExecutionException e) {
+			LOG.error("Analysis failed", e.getCause());
+		} 
+		catch (TimeoutException e) {
+			//timed out
+		}
+		return false;
+	}
+	/**
+	 * Map a summed word polarity to the 5 point scale of the sentiment model (-2 to 2).
+	 * @param polarity
+	 * @return
+	 */
+	private static int polarityClass(double polarity)
+	{
+		if(polarity >= 0.75)
+			return 2;
+		if(polarity >= 0.25)
+			return 1;
+		if(polarity <= -0.75)
+			return -2;
+		if(polarity <= -0.25)
+			return -1;
+		return 0;
+	}
+	/**
+	 * The SentiNet part of speech for a Penn Treebank tag, or 0 if not one of adjective, adverb, noun or verb.
+	 * @param tag
+	 * @return
+	 */
+	private static char lexiconPos(String tag)
+	{
+		if(tag == null)
+			return 0;
+		if(ADJ_TAGS.contains(tag))
+			return SentimentLexicon.ADJ;
+		if(ADV_TAGS.contains(tag))
+			return SentimentLexicon.ADV;
+		if(NOUN_TAGS.contains(tag))
+			return SentimentLexicon.NOUN;
+		if(VERB_TAGS.contains(tag))
+			return SentimentLexicon.VERB;
+		return 0;
+	}
+	/**
+	 * The fast scorer. Sums up SentiNet word weights for the POS tagged tokens of each sentence,
+	 * without parsing.
+	 * @param tokenized
+	 * @return
+	 */
+	private Sentiments lexiconSentences(Annotation tokenized)
+	{
+		Sentiments sentiments = new Sentiments();
+		for (CoreMap sentence : tokenized.get(CoreAnnotations.SentencesAnnotation.class)) 
+		{
+			SentimentVector weights = new SentimentVector();
+			if (sentiNet.isLoaded()) 
+			{
+				List<CoreLabel> tokens = sentence.get(CoreAnnotations.TokensAnnotation.class);
+				List<String> words = new ArrayList<>(tokens.size());
+				char[] pos = new char[tokens.size()];
+				for (CoreLabel token : tokens) 
+				{
+					pos[words.size()] = lexiconPos(token.tag());
+					words.add(token.word());
+				}
+				double[] scores = new double[pos.length];
+				sentiNet.extract(words, pos, scores);
+				for (int i = 0; i < pos.length; i++) 
+				{
+					switch(pos[i])
+					{
+						case SentimentLexicon.ADJ: weights.adjScore += scores[i]; break;
+						case SentimentLexicon.ADV: weights.advScore += scores[i]; break;
+						case SentimentLexicon.NOUN: weights.nounScore += scores[i]; break;
+						case SentimentLexicon.VERB: weights.verbScore += scores[i]; break;
+						default: break;
+					}
+				}
 			}
-			List<LabeledWord> labeledYield = match.labeledYield();
-			LOG.debug("Verb Labels: " + labeledYield);
+			weights.overallScore = polarityClass(weights.adjScore + weights.advScore + weights.nounScore + weights.verbScore);
+			sentiments.add(weights);
 		}
-
-		pattern = TregexPattern.compile("@VBD");
-		matcher = pattern.matcher(parse);
-		while (matcher.find()) {
-			Tree match = matcher.getMatch();
-			List<Tree> leaves = match.getLeaves();
-			if (sentiNet.isLoaded()) {
-				for (Tree t : leaves)
-					score += sentiNet.extractVerb(t + "");
-
+		sentiments.normalize();
+		sentiments.setTier(Tier.LEXICON);
+		return sentiments;
+	}
+	/**
+	 * Get vectorized form of sentiment/opinion for a batch of texts. Each text is submitted as a document task, 
+	 * whose sentences are stolen by idle annotator threads, so that short texts do not leave the pool idle.
+	 * @param texts
+	 * @return list of {@linkplain SentimentVector}, in the same order as the texts
+	 */
+	public List<SentimentVector> getSentiments(List<String> texts) {
+		Assert.isTrue(initialized, "Not initialized!");
+		List<SentimentVector> vectors = new ArrayList<>(texts.size());
+		Long[] keys = new Long[texts.size()];
+		Annotation[] tokenized = new Annotation[texts.size()];
+		int i = 0;
+		for(String text : texts)
+		{
+			SentimentVector cached = null;
+			if(vectorCache != null)
+			{
+				keys[i] = vectorCache.keyFor(text);
+				if(keys[i] != null)
+					cached = vectorCache.get(keys[i]);
 			}
-			List<LabeledWord> labeledYield = match.labeledYield();
-			LOG.debug("verb Labels: " + labeledYield);
-		}
-
-		pattern = TregexPattern.compile("@VBG");
-		matcher = pattern.matcher(parse);
-		while (matcher.find()) {
-			Tree match = matcher.getMatch();
-			List<Tree> leaves = match.getLeaves();
-			if (sentiNet.isLoaded()) {
-				for (Tree t : leaves)
-					score += sentiNet.extractVerb(t + "");
-
+			if(cached == null)
+			{
+				tokenized[i] = tokenizeText(text);
 			}
-			List<LabeledWord> labeledYield = match.labeledYield();
-			LOG.debug("verb Labels: " + labeledYield);
+			vectors.add(cached);
+			i++;
 		}
 		
-		pattern = TregexPattern.compile("@VBZ");
-		matcher = pattern.matcher(parse);
-		while (matcher.find()) {
-			Tree match = matcher.getMatch();
-			List<Tree> leaves = match.getLeaves();
-			if (sentiNet.isLoaded()) {
-				for (Tree t : leaves)
-					score += sentiNet.extractVerb(t + "");
-
-			}
-			List<LabeledWord> labeledYield = match.labeledYield();
-			LOG.debug("verb Labels: " + labeledYield);
+		DocumentTask[] tasks = new DocumentTask[tokenized.length];
+		for(i = 0; i < tokenized.length; i++)
+		{
+			if(tokenized[i] == null)
+				continue;
+			Sentiments s = new Sentiments();
+			tasks[i] = new DocumentTask(tokenized[i].get(CoreAnnotations.SentencesAnnotation.class), s);
+			annotatorThreads.execute(tasks[i]);
+			vectors.set(i, s);
 		}
 		
-		pattern = TregexPattern.compile("@VBN");
-		matcher = pattern.matcher(parse);
-		while (matcher.find()) {
-			Tree match = matcher.getMatch();
-			List<Tree> leaves = match.getLeaves();
-			if (sentiNet.isLoaded()) {
-				for (Tree t : leaves)
-					score += sentiNet.extractVerb(t + "");
-
+		long await = defaultAwaitMillis();
+		long deadline = await == Long.MAX_VALUE ? Long.MAX_VALUE : System.currentTimeMillis() + await;
+		for(i = 0; i < tokenized.length; i++)
+		{
+			if(tokenized[i] == null)
+				continue;
+			long remaining = deadline == Long.MAX_VALUE ? Long.MAX_VALUE : Math.max(0, deadline - System.currentTimeMillis());
+			Sentiments s = (Sentiments) vectors.get(i);
+			s.setComplete(awaitDocument(tasks[i], remaining));
+			s.normalize();
+			if(s.isComplete() && keys[i] != null)
+				vectorCache.put(keys[i], s);
+			else if(!s.isComplete())
+			{
+				tasks[i].cancel(false);
+				LOG.warn("Analyzer did not complete in stipulated amount of time!");
 			}
-			List<LabeledWord> labeledYield = match.labeledYield();
-			LOG.debug("verb Labels: " + labeledYield);
 		}
+		return vectors;
+	}
+	/**
+	 * Build Weka instances for a batch of tuples, using {@link #getSentiments(List)}.
+	 * @param struct
+	 * @param tuples
+	 * @return instances in the same order as the tuples
+	 */
+	public List<Instance> buildInstances(Instances struct, List<Tuple> tuples)
+	{
+		List<String> texts = new ArrayList<>(tuples.size());
+		for(Tuple t : tuples)
+			texts.add(t.getText());
 		
-		pattern = TregexPattern.compile("@VBP");
-		matcher = pattern.matcher(parse);
-		while (matcher.find()) {
-			Tree match = matcher.getMatch();
-			List<Tree> leaves = match.getLeaves();
-			if (sentiNet.isLoaded()) {
-				for (Tree t : leaves)
-					score += sentiNet.extractVerb(t + "");
-
-			}
-			List<LabeledWord> labeledYield = match.labeledYield();
-			LOG.debug("verb Labels: " + labeledYield);
+		List<SentimentVector> vectors = getSentiments(texts);
+		List<Instance> instances = new ArrayList<>(tuples.size());
+		int i = 0;
+		for(Tuple t : tuples)
+		{
+			instances.add(newWekaInstance(struct, t, vectors.get(i++)));
 		}
-		
-		LOG.debug("Sentinet: " + score);
-
-		return score;
+		return instances;
 	}
 	
-	private double calcPOSAdj(Tree parse) {
-
-		TregexPattern pattern = TregexPattern.compile("@JJ");
-		TregexMatcher matcher = pattern.matcher(parse);
-		double score = 0.0;
-		while (matcher.find()) {
-			Tree match = matcher.getMatch();
-			List<Tree> leaves = match.getLeaves();
-
-			if (sentiNet.isLoaded()) {
-				for (Tree t : leaves)
-					score += sentiNet.extractAdj(t + "");
-
-			}
-			List<LabeledWord> labeledYield = match.labeledYield();
-			LOG.debug("Adj Labels: " + labeledYield);
-		}
-
-		pattern = TregexPattern.compile("@JJR");
-		matcher = pattern.matcher(parse);
-		while (matcher.find()) {
-			Tree match = matcher.getMatch();
-			List<Tree> leaves = match.getLeaves();
-			if (sentiNet.isLoaded()) {
-				for (Tree t : leaves)
-					score += sentiNet.extractAdj(t + "");
-
-			}
-			List<LabeledWord> labeledYield = match.labeledYield();
-			LOG.debug("Adj Labels: " + labeledYield);
-		}
-
-		pattern = TregexPattern.compile("@JJS");
-		matcher = pattern.matcher(parse);
-		while (matcher.find()) {
-			Tree match = matcher.getMatch();
-			List<Tree> leaves = match.getLeaves();
-			if (sentiNet.isLoaded()) {
-				for (Tree t : leaves)
-					score += sentiNet.extractAdj(t + "");
-
-			}
-			List<LabeledWord> labeledYield = match.labeledYield();
-			LOG.debug("Adj Labels: " + labeledYield);
-		}
-
-		LOG.debug("Sentinet: " + score);
-
-		return score;
-	}
-
-	private SentimentVector calculatePOSScores(Tree parse) {
-		SentimentVector vector = new SentimentVector();
-		if (parse.isPhrasal()) {
-			// TregexPattern pattern = TregexPattern.compile("@NP");//noun
-			// TregexPattern pattern = TregexPattern.compile("@VP");
-			// TregexPattern pattern = TregexPattern.compile("@JJS");//adjective
-			// superlative
-			// TregexPattern pattern = TregexPattern.compile("@CD");//numeric
-			TregexPattern pattern = TregexPattern.compile("@ADJP");
-			TregexMatcher matcher = pattern.matcher(parse);
-			
-			while (matcher.find()) {
-				Tree match = matcher.getMatch();
-				vector.adjScore += calcPOSAdj(match.deepCopy());
-				vector.advScore += calcPOSAdv(match.deepCopy());
-				vector.nounScore += calcPOSNoun(match.deepCopy());
-				vector.verbScore += calcPOSVerb(match.deepCopy());
-			}
-			
-			pattern = TregexPattern.compile("@VP");
-			matcher = pattern.matcher(parse);
-			while (matcher.find()) {
-				Tree match = matcher.getMatch();
-				vector.adjScore += calcPOSAdj(match.deepCopy());
-				vector.nounScore += calcPOSNoun(match.deepCopy());
-				vector.verbScore += calcPOSVerb(match.deepCopy());
-				vector.advScore += calcPOSAdv(match.deepCopy());
-			}
-		}
-		return vector;
+	/**
+	 * Build a Weka instance from the sentiment vector.
+	 * @param struct
+	 * @param t
+	 * @param vector
+	 * @return
+	 */
+	public static Instance newWekaInstance(Instances struct, Tuple t, SentimentVector vector)
+	{
+		Instance i = new DenseInstance(6);
+		i.setDataset(struct);
+		i.setValue(struct.attribute(ClassificationModelEngine.CLASSIFIER_ATTRIB_ST_ADJ), vector.getAdjScore());
+		i.setValue(struct.attribute(ClassificationModelEngine.CLASSIFIER_ATTRIB_ST_ADV), vector.getAdvScore());
+		i.setValue(struct.attribute(ClassificationModelEngine.CLASSIFIER_ATTRIB_ST_NOUN), vector.getNounScore());
+		i.setValue(struct.attribute(ClassificationModelEngine.CLASSIFIER_ATTRIB_ST_VERB), vector.getVerbScore());
+		i.setValue(struct.attribute(ClassificationModelEngine.CLASSIFIER_ATTRIB_ST_ALL), vector.getOverallScore());
+		if (t.getTextClass() != null) {
+			//not a test instance
+			i.setValue(struct.attribute(ClassificationModelEngine.CLASSIFIER_ATTRIB_ST_CLASS_IDX),
+					t.getTextClass());
+		}
+		return i;
 	}
-	private ExecutorService annotatorThreads, builderThreads;
 	
-	private Sentiments annotateSentences(Annotation tokenized)
+	private Sentiments annotateSentence(CoreMap sentence)
 	{
-		Sentiments sentiments = new Sentiments();
-		List<CoreMap> sentences = tokenized.get(CoreAnnotations.SentencesAnnotation.class);
-		CountDownLatch latch = new CountDownLatch(sentences.size());
-		for (CoreMap sentence : sentences) {
-			
-			annotatorThreads.submit(new SentimentTask(sentence, latch, sentiments));
+		Annotation nextAnnotation = new Annotation(sentence.get(CoreAnnotations.TextAnnotation.class));
+		nextAnnotation.set(CoreAnnotations.SentencesAnnotation.class, Collections.singletonList(sentence));
+		return annotateSentence(nextAnnotation);
+	}
+	/**
+	 * Annotates the sentences of a document into a shared total. The sentences are forked into the worker's deque, so 
+	 * that idle workers can steal them, while documents submitted concurrently share the same pool. A single sentence 
+	 * is annotated in the current thread.
+	 */
+	private class DocumentTask extends RecursiveAction
+	{
+		private static final long serialVersionUID = 1L;
+		final List<CoreMap> sentences;
+		final Sentiments total;
+		DocumentTask(List<CoreMap> sentences, Sentiments total) {
+			this.sentences = sentences;
+			this.total = total;
 		}
-		boolean done = false;
-		try {
-			done = latch.await(timeout > 0 ? TimeUnit.SECONDS.toMillis(timeout) : Long.MAX_VALUE, unit);
-		} catch (InterruptedException e) {
-			Thread.currentThread().interrupt();
+		@Override
+		protected void compute() {
+			if(sentences.size() == 1)
+			{
+				total.add(annotateSentence(sentences.get(0)));
+				return;
+			}
+			List<SentenceTask> forks = new ArrayList<>(sentences.size());
+			for (CoreMap sentence : sentences) {
+				forks.add(new SentenceTask(sentence, this));
+			}
+			invokeAll(forks);
 		}
-		
-		sentiments.normalize();
-		if(!done)
-			LOG.warn("Analyzer did not complete in stipulated amount of time!");
-		
-		return sentiments;
 	}
-	
-	private class SentimentTask implements Callable<Sentiments>
+	private class SentenceTask extends RecursiveAction
 	{
-
-		public SentimentTask(CoreMap sentence, CountDownLatch latch, Sentiments total) {
-			super();
+		private static final long serialVersionUID = 1L;
+		final CoreMap sentence;
+		final DocumentTask document;
+		SentenceTask(CoreMap sentence, DocumentTask document) {
 			this.sentence = sentence;
-			this.latch = latch;
-			this.total = total;
+			this.document = document;
 		}
-		final CoreMap sentence;
-		final CountDownLatch latch;
-		final Sentiments total;
 		@Override
-		public Sentiments call() throws Exception {
-			Annotation nextAnnotation = new Annotation(sentence.get(CoreAnnotations.TextAnnotation.class));
-			nextAnnotation.set(CoreAnnotations.SentencesAnnotation.class, Collections.singletonList(sentence));
-			total.add(annotateSentence(nextAnnotation));
-			latch.countDown();
-			return total;
+		protected void compute() {
+			//skip if the document was abandoned on deadline
+			if(!document.isCancelled())
+				document.total.add(annotateSentence(sentence));
 		}
-		
 	}
 
 	private Annotation tokenizeText(String text)
 	{
-		return tokenizerPipeline.process(text.replaceAll("[-+^:]", ""));
+		Annotation annot = new Annotation(text.replaceAll("[-+^:]", ""));
+		tokenizerPipelines.get().annotate(annot);
+		return annot;
 	}
-	private Sentiments calculate(String text) {
+	private Sentiments calculate(String text, long deadlineMillis, boolean tiered) {
 		LOG.debug("start tokenization ..");
 		Annotation tokenized = tokenizeText(text);
 		LOG.debug("tokenization done");
-		Sentiments sentiments = annotateSentences(tokenized);
+		if(tiered && tieredMaxTextLength > 0 && text.length() > tieredMaxTextLength)
+		{
+			LOG.debug("Text length exceeds "+tieredMaxTextLength+". Using lexicon scoring");
+			return lexiconSentences(tokenized);
+		}
+		Sentiments sentiments = annotateSentences(tokenized, deadlineMillis);
 		return sentiments;
 	}
 
 	
-	private class BuildInstanceTask implements Runnable
+	/**
+	 * Builds an instance on a builder thread. On completion, the task is queued for collection if the results are
+	 * collected unordered.
+	 */
+	private class BuildInstanceTask extends FutureTask<Instance>
 	{
-		private final BlockingQueue<Instance> instanceQ;
-		public BuildInstanceTask(Instances struct, Tuple t, BlockingQueue<Instance> instanceQ) {
-			super();
-			this.struct = struct;
-			this.t = t;
-			this.instanceQ = instanceQ;
-		}
-		Instances struct;
-		Tuple t;
-		
-		private Instance newWekaInstance()
-		{
-			Instance i = new DenseInstance(6);
-			i.setDataset(struct);
-			SentimentVector vector = getSentiment(t.getText());//this invocation can take time, depending on the text size and complexity.
-			i.setValue(struct.attribute(ClassificationModelEngine.CLASSIFIER_ATTRIB_ST_ADJ), vector.getAdjScore());
-			i.setValue(struct.attribute(ClassificationModelEngine.CLASSIFIER_ATTRIB_ST_ADV), vector.getAdvScore());
-			i.setValue(struct.attribute(ClassificationModelEngine.CLASSIFIER_ATTRIB_ST_NOUN), vector.getNounScore());
-			i.setValue(struct.attribute(ClassificationModelEngine.CLASSIFIER_ATTRIB_ST_VERB), vector.getVerbScore());
-			i.setValue(struct.attribute(ClassificationModelEngine.CLASSIFIER_ATTRIB_ST_ALL), vector.getOverallScore());
-			if (t.getTextClass() != null) {
-				//not a test instance
-				i.setValue(struct.attribute(ClassificationModelEngine.CLASSIFIER_ATTRIB_ST_CLASS_IDX),
-						t.getTextClass());
-			}
-			return i;
+		private final BuildInstancesDelegate delegate;
+		public BuildInstanceTask(Callable<Instance> builder, BuildInstancesDelegate delegate) {
+			super(builder);
+			this.delegate = delegate;
 		}
 		@Override
-		public void run() {
-			try 
-			{
-				Instance i = newWekaInstance();
-				try {
-					instanceQ.put(i);
-				} catch (InterruptedException e) {
-					Thread.currentThread().interrupt();
-				}
-			} catch (Exception e) {
-				LOG.error("", e);
-			}
+		protected void done() {
+			delegate.onDone(this);
 		}
 		
 	}
+	private Callable<Instance> instanceBuilder(final Instances struct, final Tuple t)
+	{
+		return new Callable<Instance>() {
+			@Override
+			public Instance call() throws Exception {
+				SentimentVector vector = getSentiment(t.getText());//this invocation can take time, depending on the text size and complexity.
+				return SentimentAnalyzer.newWekaInstance(struct, t, vector);
+			}
+		};
+	}
+	/**
+	 * A new instance builder, collecting results as per the configured ordering, with the configured in-flight window.
+	 * @return
+	 */
 	public BuildInstancesDelegate newInstancesBuilder()
 	{
-		return new BuildInstancesDelegate();
+		return newInstancesBuilder(builderOrdered, builderWindow);
+	}
+	/**
+	 * A new instance builder.
+	 * @param ordered if true, instances are polled in the order of submission, else in the order of completion
+	 * @param window max number of instances submitted, but not yet polled. Submission blocks when the window is full
+	 * @return
+	 */
+	public BuildInstancesDelegate newInstancesBuilder(boolean ordered, int window)
+	{
+		return new BuildInstancesDelegate(ordered, window);
 	}
+	/**
+	 * Submits tuples to the builder threads, and collects the built instances. At most a window of instances can be 
+	 * in flight (submitted, but not yet polled), so that the producer is held back by a slow consumer. Keeps a count of 
+	 * the completed instances for progress and throughput metrics.
+	 */
 	public class BuildInstancesDelegate
 	{
 		private volatile int count = 0;
-		private BuildInstancesDelegate() {
-		}
-		private final BlockingQueue<Instance> instanceQ = new LinkedBlockingQueue<>();
+		private final boolean ordered;
+		private final int window;
+		private final Semaphore inFlight;
+		private final AtomicInteger completed = new AtomicInteger();
+		private volatile long startTime;
+		private BuildInstancesDelegate(boolean ordered, int window) {
+			Assert.isTrue(window > 0, "window should be positive");
+			this.ordered = ordered;
+			this.window = window;
+			this.inFlight = new Semaphore(window);
+		}
+		private final BlockingQueue<Future<Instance>> instanceQ = new LinkedBlockingQueue<>();
+		private void onDone(BuildInstanceTask task)
+		{
+			completed.incrementAndGet();
+			if(!ordered)
+				instanceQ.add(task);
+		}
+		/**
+		 * Submit a tuple to be built, waiting if the in-flight window is full.
+		 * @param struct
+		 * @param t
+		 */
 		public void submitInstance(Instances struct, Tuple t) {
-			builderThreads.submit(new BuildInstanceTask(struct, t, instanceQ));
+			try {
+				inFlight.acquire();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new OperationFailedUnexpectedly(e);
+			}
+			if(count == 0)
+				startTime = System.currentTimeMillis();
+			BuildInstanceTask task = new BuildInstanceTask(instanceBuilder(struct, t), this);
+			if(ordered)
+				instanceQ.add(task);
+			builderThreads.execute(task);
 			count++;
 		}
-		
+		/**
+		 * Take the next built instance, waiting if necessary.
+		 * @return
+		 * @throws InterruptedException
+		 * @throws OperationFailedUnexpectedly if the instance could not be built
+		 */
 		public Instance pollInstance() throws InterruptedException {
-			return instanceQ.take();
+			Future<Instance> next = instanceQ.take();
+			inFlight.release();
+			try {
+				return next.get();
+			} catch (ExecutionException e) {
+				throw new OperationFailedUnexpectedly("Unable to build instance", e.getCause());
+			}
 		}
 
 		public int getCount() {
 			return count;
 		}
+		/**
+		 * @return number of instances built so far
+		 */
+		public int getCompleted() {
+			return completed.get();
+		}
+		public boolean isOrdered() {
+			return ordered;
+		}
+		public int getWindow() {
+			return window;
+		}
+		/**
+		 * A pull style stream of instances built from the tuples. The tuples are read only as the window frees up,
+		 * hence memory is bounded by the window size, irrespective of the number of tuples.
+		 * @param struct
+		 * @param tuples
+		 * @return
+		 */
+		public InstanceStream stream(Instances struct, Iterator<Tuple> tuples) {
+			return new InstanceStream(struct, tuples);
+		}
+		public class InstanceStream implements Iterator<Instance>
+		{
+			private final Instances struct;
+			private final Iterator<Tuple> tuples;
+			private int pending = 0;
+			private InstanceStream(Instances struct, Iterator<Tuple> tuples) {
+				this.struct = struct;
+				this.tuples = tuples;
+			}
+			private void fill()
+			{
+				while(pending < window && tuples.hasNext())
+				{
+					submitInstance(struct, tuples.next());
+					pending++;
+				}
+			}
+			@Override
+			public boolean hasNext() {
+				fill();
+				return pending > 0;
+			}
+			/**
+			 * @throws OperationFailedUnexpectedly if the instance could not be built, or on interruption
+			 */
+			@Override
+			public Instance next() {
+				if(!hasNext())
+					throw new NoSuchElementException();
+				pending--;
+				try {
+					return pollInstance();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new OperationFailedUnexpectedly(e);
+				}
+			}
+			@Override
+			public String toString() {
+				return BuildInstancesDelegate.this.toString();
+			}
+		}
+		public long getElapsedMillis() {
+			return count == 0 ? 0 : System.currentTimeMillis() - startTime;
+		}
+		/**
+		 * @return instances built per second, since the first submission
+		 */
+		public double getThroughput() {
+			long elapsed = getElapsedMillis();
+			return elapsed == 0 ? 0 : completed.get() * 1000.0 / elapsed;
+		}
+		@Override
+		public String toString() {
+			return "Built " + getCompleted() + " of " + getCount() + " instances in " + ConfigUtil.toTimeElapsedString(getElapsedMillis())
+					+ " (" + String.format("%.2f", getThroughput()) + " docs/sec)";
+		}
 
 	}
 	
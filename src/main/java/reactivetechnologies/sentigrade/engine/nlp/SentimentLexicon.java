@@ -0,0 +1,57 @@
+/**
+ * Copyright 2017 esutdal
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package reactivetechnologies.sentigrade.engine.nlp;
+
+import java.util.List;
+
+/**
+ * A polarity lexicon for words, by part of speech.
+ * @author esutdal
+ *
+ */
+public interface SentimentLexicon {
+
+	char NOUN = 'n';
+	char ADJ = 'a';
+	char ADV = 'r';
+	char VERB = 'v';
+	/**
+	 * If the lexicon data is available for lookup.
+	 * @return
+	 */
+	boolean isLoaded();
+	/**
+	 * Polarity score of the word for the given part of speech, or 0 if not present. Characters other than
+	 * letters and whitespace are ignored.
+	 * @param word
+	 * @param pos one of {@link #NOUN}, {@link #ADJ}, {@link #ADV}, {@link #VERB}
+	 * @return
+	 */
+	double extract(CharSequence word, char pos);
+	/**
+	 * Bulk lookup of the tokens of a sentence. Score of the i-th word for the i-th part of speech is set in
+	 * the i-th position of the scores array. A part of speech 0 is skipped, and scores 0.
+	 * @param words
+	 * @param pos
+	 * @param scores
+	 */
+	default void extract(List<? extends CharSequence> words, char[] pos, double[] scores)
+	{
+		for (int i = 0; i < words.size(); i++) {
+			scores[i] = pos[i] == 0 ? 0.0 : extract(words.get(i), pos[i]);
+		}
+	}
+}
@@ -21,6 +21,29 @@ package reactivetechnologies.sentigrade.engine.nlp;
  */
 public class SentimentVector {
 
+	/**
+	 * The analysis tier which produced a vector. FULL is the parse and sentiment model, LEXICON is
+	 * the SentiNet word weights of POS tagged tokens.
+	 */
+	public static enum Tier {FULL, LEXICON}
+	
+	public SentimentVector() {
+	}
+	/**
+	 * Copy constructor.
+	 * @param from
+	 */
+	public SentimentVector(SentimentVector from) {
+		this.overallScore = from.overallScore;
+		this.adjScore = from.adjScore;
+		this.advScore = from.advScore;
+		this.conjScore = from.conjScore;
+		this.modvScore = from.modvScore;
+		this.nounScore = from.nounScore;
+		this.verbScore = from.verbScore;
+		this.tier = from.tier;
+	}
+
 	public double getOverallScore() {
 		return overallScore;
 	}
@@ -64,6 +87,13 @@ public class SentimentVector {
 	protected double modvScore = 0.0;//MD (maybe, might, should..)
 	protected double nounScore = 0.0;
 	protected double verbScore = 0.0;
+	protected Tier tier = Tier.FULL;
+	public Tier getTier() {
+		return tier;
+	}
+	public void setTier(Tier tier) {
+		this.tier = tier;
+	}
 	public double getVerbScore() {
 		return verbScore;
 	}
@@ -73,6 +103,6 @@ public class SentimentVector {
 	@Override
 	public String toString() {
 		return "SentimentVector [overallScore=" + overallScore + ", adjScore=" + adjScore + ", advScore=" + advScore
-				+ ", nounScore=" + nounScore + ", verbScore=" + verbScore + "]";
+				+ ", nounScore=" + nounScore + ", verbScore=" + verbScore + ", tier=" + tier + "]";
 	}
 }
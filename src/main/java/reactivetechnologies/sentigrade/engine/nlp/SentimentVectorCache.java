@@ -0,0 +1,154 @@
+/**
+ * Copyright 2017 esutdal
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package reactivetechnologies.sentigrade.engine.nlp;
+
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.hazelcast.util.HashUtil;
+/**
+ * A bounded LRU cache of {@linkplain SentimentVector}, keyed by the murmur hash of the normalized text. 
+ * Normalization trims and collapses whitespace, and optionally ignores case. The cache is bounded by number
+ * of entries, and texts longer than a given length are not admitted, since they seldom repeat.
+ * @author esutdal
+ *
+ */
+public class SentimentVectorCache {
+
+	private final int maxEntries;
+	private final int maxTextLength;
+	private final boolean ignoreCase;
+	private final LinkedHashMap<Long, SentimentVector> cache;
+	private final AtomicLong hits = new AtomicLong(), misses = new AtomicLong(), evictions = new AtomicLong();
+	/**
+	 * 
+	 * @param maxEntries max number of vectors held
+	 * @param maxTextLength texts longer than this will not be cached
+	 * @param ignoreCase whether to lower case while normalizing
+	 */
+	public SentimentVectorCache(int maxEntries, int maxTextLength, boolean ignoreCase) {
+		this.maxEntries = maxEntries;
+		this.maxTextLength = maxTextLength;
+		this.ignoreCase = ignoreCase;
+		cache = new LinkedHashMap<Long, SentimentVector>(Math.min(maxEntries, 1024), 0.75f, true){
+
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Long, SentimentVector> eldest) {
+				if(size() > SentimentVectorCache.this.maxEntries)
+				{
+					evictions.incrementAndGet();
+					return true;
+				}
+				return false;
+			}
+		};
+	}
+	/**
+	 * Collapse whitespace runs into a single space, and trim.
+	 * @param text
+	 * @return
+	 */
+	String normalize(String text)
+	{
+		StringBuilder s = new StringBuilder(text.length());
+		boolean space = false;
+		for (int i = 0; i < text.length(); i++) {
+			char c = text.charAt(i);
+			if(Character.isWhitespace(c))
+			{
+				space = s.length() > 0;
+				continue;
+			}
+			if(space)
+			{
+				s.append(' ');
+				space = false;
+			}
+			s.append(ignoreCase ? Character.toLowerCase(c) : c);
+		}
+		return s.toString();
+	}
+	/**
+	 * The cache key for the given text.
+	 * @param text
+	 * @return key, or null if the text is not cacheable
+	 */
+	public Long keyFor(String text)
+	{
+		if(text == null || text.length() > maxTextLength)
+			return null;
+		byte[] bytes = normalize(text).getBytes(StandardCharsets.UTF_8);
+		return HashUtil.MurmurHash3_x64_64(bytes, 0, bytes.length);
+	}
+	/**
+	 * 
+	 * @param key
+	 * @return cached vector or null
+	 */
+	public SentimentVector get(Long key)
+	{
+		SentimentVector v;
+		synchronized (cache) {
+			v = cache.get(key);
+		}
+		if(v != null)
+			hits.incrementAndGet();
+		else
+			misses.incrementAndGet();
+		return v;
+	}
+	/**
+	 * 
+	 * @param key
+	 * @param vector
+	 */
+	public void put(Long key, SentimentVector vector)
+	{
+		SentimentVector copy = new SentimentVector(vector);
+		synchronized (cache) {
+			cache.put(key, copy);
+		}
+	}
+	public int size()
+	{
+		synchronized (cache) {
+			return cache.size();
+		}
+	}
+	public long getHits() {
+		return hits.get();
+	}
+	public long getMisses() {
+		return misses.get();
+	}
+	public long getEvictions() {
+		return evictions.get();
+	}
+	public double getHitRatio() {
+		long h = hits.get();
+		long total = h + misses.get();
+		return total == 0 ? 0.0 : (double) h / total;
+	}
+	@Override
+	public String toString() {
+		return "SentimentVectorCache [size=" + size() + ", hits=" + getHits() + ", misses=" + getMisses()
+				+ ", evictions=" + getEvictions() + ", hitRatio=" + String.format("%.2f", getHitRatio()) + "]";
+	}
+}
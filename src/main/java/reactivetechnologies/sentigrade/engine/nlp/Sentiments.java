@@ -18,6 +18,17 @@ package reactivetechnologies.sentigrade.engine.nlp;
 class Sentiments extends SentimentVector
 {
 	private int n=0;
+	private volatile boolean complete = true;
+	/**
+	 * Whether all the sentences were analyzed in time.
+	 * @return
+	 */
+	public boolean isComplete() {
+		return complete;
+	}
+	public void setComplete(boolean complete) {
+		this.complete = complete;
+	}
 	public synchronized void add(SentimentVector s)
 	{
 		this.overallScore += s.overallScore;
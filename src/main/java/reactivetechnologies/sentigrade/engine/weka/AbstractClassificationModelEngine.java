@@ -64,4 +64,19 @@ public abstract class AbstractClassificationModelEngine extends AbstractClassifi
 	 * @return
 	 */
 	public abstract boolean isClassifierUpdatable();
+	/**
+	 * A new, untrained instance of the configured classifier, with the same options. To be built outside the engine 
+	 * and swapped in by {@link #swapClassifier(Classifier, Instances)}.
+	 * @return
+	 * @throws Exception
+	 */
+	public abstract Classifier newClassifierInstance() throws Exception;
+	/**
+	 * Replace the current classifier with one built outside the engine. Readers and snapshots would see either the previous
+	 * model or the new one, never a partially built one.
+	 * @param trained the built classifier
+	 * @param data the dataset it was built on
+	 * @throws Exception
+	 */
+	public abstract void swapClassifier(Classifier trained, Instances data) throws Exception;
 }
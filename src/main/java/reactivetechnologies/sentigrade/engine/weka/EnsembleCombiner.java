@@ -30,6 +30,8 @@ package reactivetechnologies.sentigrade.engine.weka;
 
 import java.io.IOException;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.util.Assert;
 import org.springframework.util.StringUtils;
 
@@ -42,7 +44,7 @@ import weka.core.Instances;
 import weka.core.Utils;
 
 /**
- * VOTING/STACKING ensembling of classifiers.
+ * VOTING/STACKING ensembling of classifiers, or MERGING them into one.
  * 
  * @author esutdal
  *
@@ -87,6 +89,27 @@ public enum EnsembleCombiner {
 			return v;
 		}
 	},
+	/**
+	 * A single model from the members' statistics, where these can be added up exactly (Naive Bayes family). So the
+	 * combined model costs the same to score as any one member. Falls back to {@link #VOTING} otherwise, or if the 
+	 * members cannot be merged exactly (for e.g trained on different headers).
+	 * @see ModelMerger
+	 */
+	MERGING {
+		@Override
+		public Classifier getEnsembleClassifier(Classifier[] classifiers, Instances instances, String optionStr)
+				throws EngineException {
+			if(ModelMerger.isMergeable(classifiers))
+			{
+				try {
+					return ModelMerger.merge(classifiers);
+				} catch (ModelMergeFailureException e) {
+					log.warn("Falling back to VOTING, as statistics could not be merged exactly. "+e.getMessage());
+				}
+			}
+			return VOTING.getEnsembleClassifier(classifiers, instances, optionStr);
+		}
+	},
 	EVALUATING {
 
 		private Evaluation evaluateClassifier(Classifier cl, Instances ins) throws IOException, Exception {
@@ -119,8 +142,8 @@ public enum EnsembleCombiner {
 		}
 	};
 	/**
-	 * Get an ensemble classifier from the supplied ones. For {@link #VOTING}
-	 * and {@link #STACKING}, no instances need to be passed.
+	 * Get an ensemble classifier from the supplied ones. For {@link #VOTING},
+	 * {@link #MERGING} and {@link #STACKING}, no instances need to be passed.
 	 * 
 	 * @param classifiers
 	 * @param instances
@@ -130,5 +153,7 @@ public enum EnsembleCombiner {
 	 */
 	public abstract Classifier getEnsembleClassifier(Classifier[] classifiers, Instances instances, String optionStr)
 			throws EngineException;
+	
+	private static final Logger log = LoggerFactory.getLogger(EnsembleCombiner.class);
 
 }
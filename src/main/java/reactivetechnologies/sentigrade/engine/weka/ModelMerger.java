@@ -0,0 +1,279 @@
+/**
+ * Copyright 2017 esutdal
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package reactivetechnologies.sentigrade.engine.weka;
+
+import java.lang.reflect.Field;
+
+import reactivetechnologies.sentigrade.err.ModelMergeFailureException;
+import weka.classifiers.AbstractClassifier;
+import weka.classifiers.Classifier;
+import weka.classifiers.bayes.NaiveBayes;
+import weka.classifiers.bayes.NaiveBayesMultinomialUpdateable;
+import weka.classifiers.bayes.NaiveBayesUpdateable;
+import weka.core.Instances;
+import weka.core.OptionHandler;
+import weka.estimators.DiscreteEstimator;
+import weka.estimators.Estimator;
+import weka.estimators.NormalEstimator;
+/**
+ * Exact merge of classifiers trained on disjoint partitions of a dataset, by adding up their sufficient statistics.
+ * Every member is assumed to be trained from the same prior, i.e an untrained instance built on the same structure, 
+ * so that the merged statistics are the sum of the members' less the prior counted in surplus. Supported for 
+ * {@linkplain NaiveBayesMultinomialUpdateable}, where the statistics are the word and class counts; and for 
+ * {@linkplain NaiveBayesUpdateable} with the default estimators, where these are the counts of the discrete estimators, 
+ * and the weight, value and squared value sums of the normal estimators.
+ * @author esutdal
+ *
+ */
+public final class ModelMerger {
+
+	private ModelMerger() {
+	}
+	/*
+	 * Count arrays of NaiveBayesMultinomialUpdateable. These are protected fields, hence accessed reflectively.
+	 */
+	private static final String[] MULTINOMIAL_STATS = {"m_probOfWordGivenClass", "m_probOfClass", "m_wordsPerClass"};
+	/**
+	 * If the classifier statistics can be merged exactly.
+	 * @param c
+	 * @return
+	 */
+	public static boolean isMergeable(Classifier c)
+	{
+		if(c == null)
+			return false;
+		if(c.getClass() == NaiveBayesMultinomialUpdateable.class)
+			return true;
+		if(c.getClass() == NaiveBayesUpdateable.class)
+		{
+			NaiveBayes nb = (NaiveBayes) c;
+			return !nb.getUseKernelEstimator() && !nb.getUseSupervisedDiscretization();
+		}
+		return false;
+	}
+	/**
+	 * If the statistics of all the classifiers can be merged exactly.
+	 * @param members
+	 * @return
+	 */
+	public static boolean isMergeable(Classifier[] members)
+	{
+		if(members == null || members.length == 0)
+			return false;
+		for(Classifier c : members)
+		{
+			if(!isMergeable(c) || c.getClass() != members[0].getClass())
+				return false;
+		}
+		return true;
+	}
+	/**
+	 * Merge classifiers trained independently from the same structure, into a single one. The members are not modified.
+	 * @param members
+	 * @return
+	 * @throws ModelMergeFailureException
+	 */
+	public static Classifier merge(Classifier[] members) throws ModelMergeFailureException
+	{
+		if(!isMergeable(members))
+			throw new ModelMergeFailureException("Statistics of the given classifiers cannot be merged");
+		try 
+		{
+			Classifier merged = AbstractClassifier.makeCopy(members[0]);
+			if(members.length > 1)
+			{
+				Classifier prior = priorOf(members[0]);
+				for (int i = 1; i < members.length; i++) {
+					addStatistics(merged, members[i], prior);
+				}
+			}
+			return merged;
+		} 
+		catch (ModelMergeFailureException e) {
+			throw e;
+		}
+		catch (Exception e) {
+			throw new ModelMergeFailureException("Unable to merge classifiers", e);
+		}
+	}
+	/**
+	 * The untrained classifier a member started from, by building a new instance on the member's header.
+	 * @param member
+	 * @return
+	 * @throws Exception
+	 */
+	static Classifier priorOf(Classifier member) throws Exception
+	{
+		Instances header = headerOf(member);
+		Classifier prior = AbstractClassifier.forName(member.getClass().getName(), ((OptionHandler) member).getOptions());
+		prior.buildClassifier(new Instances(header, 0));
+		return prior;
+	}
+	/**
+	 * The training header kept by the classifier.
+	 * @param c
+	 * @return
+	 * @throws Exception
+	 */
+	private static Instances headerOf(Classifier c) throws Exception
+	{
+		Field f = field(c.getClass(), c instanceof NaiveBayesMultinomialUpdateable ? "m_headerInfo" : "m_Instances");
+		Instances header = (Instances) f.get(c);
+		if(header == null)
+			throw new ModelMergeFailureException("Classifier is not built");
+		return header;
+	}
+	/**
+	 * Add the statistics learned by a member, over the prior, to the target. The target is modified. The classifiers
+	 * must have been trained on the same header.
+	 * @param target a copy of one of the members
+	 * @param member
+	 * @param prior the untrained classifier the members started from
+	 * @throws ModelMergeFailureException
+	 */
+	public static void addStatistics(Classifier target, Classifier member, Classifier prior) throws ModelMergeFailureException
+	{
+		if(!isMergeable(target) || target.getClass() != member.getClass() || target.getClass() != prior.getClass())
+			throw new ModelMergeFailureException("Cannot merge statistics of "+target.getClass().getName()+" with "+member.getClass().getName());
+		try 
+		{
+			Instances header = headerOf(target);
+			if(!header.equalHeaders(headerOf(member)) || !header.equalHeaders(headerOf(prior)))
+				throw new ModelMergeFailureException("Cannot merge statistics of classifiers trained on different headers. "+header.equalHeadersMsg(headerOf(member)));
+			if (target instanceof NaiveBayesMultinomialUpdateable) {
+				for (String name : MULTINOMIAL_STATS) {
+					Field f = field(target.getClass(), name);
+					addDelta(f.get(target), f.get(member), f.get(prior), name);
+				}
+			}
+			else
+				addNaiveBayes(target, member, prior);
+		} 
+		catch (ModelMergeFailureException e) {
+			throw e;
+		}
+		catch (Exception e) {
+			throw new ModelMergeFailureException("Unable to merge statistics of "+target.getClass().getName(), e);
+		}
+	}
+	/**
+	 * Find a declared field in the class hierarchy.
+	 * @param type
+	 * @param name
+	 * @return
+	 * @throws NoSuchFieldException
+	 */
+	static Field field(Class<?> type, String name) throws NoSuchFieldException
+	{
+		for(Class<?> c = type; c != null; c = c.getSuperclass())
+		{
+			try {
+				Field f = c.getDeclaredField(name);
+				f.setAccessible(true);
+				return f;
+			} catch (NoSuchFieldException e) {
+				//look up the super class
+			}
+		}
+		throw new NoSuchFieldException(name);
+	}
+	/*
+	 * target += member - prior, element wise over double[] or double[][].
+	 */
+	private static void addDelta(Object target, Object member, Object prior, String name) throws ModelMergeFailureException
+	{
+		if(target instanceof double[][])
+		{
+			double[][] t = (double[][]) target, m = (double[][]) member, p = (double[][]) prior;
+			checkLength(t.length, m.length, p.length, name);
+			for (int i = 0; i < t.length; i++) {
+				addDelta(t[i], m[i], p[i], name);
+			}
+		}
+		else if(target instanceof double[])
+		{
+			double[] t = (double[]) target, m = (double[]) member, p = (double[]) prior;
+			checkLength(t.length, m.length, p.length, name);
+			for (int i = 0; i < t.length; i++) {
+				t[i] += m[i] - p[i];
+			}
+		}
+		else
+			throw new ModelMergeFailureException("Unexpected type of statistic '"+name+"'");
+	}
+	/*
+	 * Class distribution, and the per attribute per class estimators.
+	 */
+	private static void addNaiveBayes(Classifier target, Classifier member, Classifier prior) throws Exception
+	{
+		Field classDist = field(NaiveBayes.class, "m_ClassDistribution");
+		addEstimator((Estimator) classDist.get(target), (Estimator) classDist.get(member), (Estimator) classDist.get(prior));
+		
+		Field dists = field(NaiveBayes.class, "m_Distributions");
+		Estimator[][] t = (Estimator[][]) dists.get(target), m = (Estimator[][]) dists.get(member), p = (Estimator[][]) dists.get(prior);
+		checkLength(t.length, m.length, p.length, "m_Distributions");
+		for (int i = 0; i < t.length; i++) {
+			checkLength(t[i].length, m[i].length, p[i].length, "m_Distributions");
+			for (int j = 0; j < t[i].length; j++) {
+				addEstimator(t[i][j], m[i][j], p[i][j]);
+			}
+		}
+	}
+	private static void addEstimator(Estimator t, Estimator m, Estimator p) throws Exception
+	{
+		if(t == null && m == null && p == null)
+			return;//class attribute
+		if(t instanceof DiscreteEstimator && m instanceof DiscreteEstimator && p instanceof DiscreteEstimator)
+		{
+			Field counts = field(DiscreteEstimator.class, "m_Counts");
+			addDelta(counts.get(t), counts.get(m), counts.get(p), "m_Counts");
+			addDouble(field(DiscreteEstimator.class, "m_SumOfCounts"), t, m, p);
+		}
+		else if(t instanceof NormalEstimator && m instanceof NormalEstimator && p instanceof NormalEstimator)
+		{
+			Field precision = field(NormalEstimator.class, "m_Precision");
+			if(precision.getDouble(t) != precision.getDouble(m))
+				throw new ModelMergeFailureException("Normal estimators differ in precision");
+			Field weights = field(NormalEstimator.class, "m_SumOfWeights");
+			Field values = field(NormalEstimator.class, "m_SumOfValues");
+			Field squares = field(NormalEstimator.class, "m_SumOfValuesSq");
+			addDouble(weights, t, m, p);
+			addDouble(values, t, m, p);
+			addDouble(squares, t, m, p);
+			//as computed by NormalEstimator on adding a value
+			double sumOfWeights = weights.getDouble(t);
+			if(sumOfWeights > 0)
+			{
+				double mean = values.getDouble(t) / sumOfWeights;
+				field(NormalEstimator.class, "m_Mean").setDouble(t, mean);
+				double stdDev = Math.sqrt(Math.abs(squares.getDouble(t) - mean * values.getDouble(t)) / sumOfWeights);
+				if(stdDev > 1e-10)
+					field(NormalEstimator.class, "m_StandardDev").setDouble(t, Math.max(precision.getDouble(t) / (2 * 3), stdDev));
+			}
+		}
+		else
+			throw new ModelMergeFailureException("Cannot merge estimators "+(t != null ? t.getClass().getName() : null)+" and "+(m != null ? m.getClass().getName() : null));
+	}
+	private static void addDouble(Field f, Object t, Object m, Object p) throws IllegalAccessException
+	{
+		f.setDouble(t, f.getDouble(t) + f.getDouble(m) - f.getDouble(p));
+	}
+	private static void checkLength(int t, int m, int p, String name) throws ModelMergeFailureException
+	{
+		if(t != m || t != p)
+			throw new ModelMergeFailureException("Dimension mismatch on statistic '"+name+"'. Members may not have been trained on the same structure");
+	}
+}
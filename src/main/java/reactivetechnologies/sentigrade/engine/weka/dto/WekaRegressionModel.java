@@ -1,7 +1,10 @@
 package reactivetechnologies.sentigrade.engine.weka.dto;
 
+import java.io.EOFException;
 import java.io.IOException;
 import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
 
 import org.springframework.util.Assert;
 
@@ -23,6 +26,7 @@ public class WekaRegressionModel extends RegressionModel {
 	private boolean attribsInitialized;
 
 	private Instances structure;
+	private List<String> vocabulary;
 	public WekaRegressionModel() {
 	}
 
@@ -105,6 +109,13 @@ public class WekaRegressionModel extends RegressionModel {
 			out.writeUTF(toXmlString());
 			out.writeBoolean(isAttribsInitialized());
 			out.writeUTF(ConfigUtil.toXml(structure));
+			out.writeBoolean(vocabulary != null);
+			if(vocabulary != null)
+			{
+				out.writeInt(vocabulary.size());
+				for(String term : vocabulary)
+					out.writeUTF(term);
+			}
 		} catch (Exception e) {
 			throw new IOException(e);
 		}
@@ -120,12 +131,56 @@ public class WekaRegressionModel extends RegressionModel {
 			fromXmlString(in.readUTF());
 			setAttribsInitialized(in.readBoolean());
 			setStructure((Instances) ConfigUtil.fromXml(in.readUTF()));
+			readVocabulary(in);
 		} catch (Exception e) {
 			throw new IOException(e);
 		}
 	}
 
 	
+	private void readVocabulary(ObjectDataInput in) throws IOException
+	{
+		try 
+		{
+			if(in.readBoolean())
+			{
+				int n = in.readInt();
+				List<String> terms = new ArrayList<>(n);
+				for (int i = 0; i < n; i++) {
+					terms.add(in.readUTF());
+				}
+				vocabulary = terms;
+			}
+		} catch (EOFException e) {
+			//written by a version without vocabulary
+		}
+	}
+	/**
+	 * The terms of the domain vocabulary, in attribute index order, that the model was trained against. Null if the
+	 * model was not trained on a vocabulary.
+	 * @return
+	 */
+	public List<String> getVocabulary() {
+		return vocabulary;
+	}
+
+	public void setVocabulary(List<String> vocabulary) {
+		this.vocabulary = vocabulary;
+	}
+	/**
+	 * If the term attributes of the two vocabularies mean the same, i.e one is a prefix of the other. 
+	 * Models trained without a vocabulary are compatible only with each other.
+	 * @param a
+	 * @param b
+	 * @return
+	 */
+	public static boolean isVocabularyCompatible(List<String> a, List<String> b)
+	{
+		if(a == null || b == null)
+			return a == b;
+		int n = Math.min(a.size(), b.size());
+		return a.subList(0, n).equals(b.subList(0, n));
+	}
 
 	public boolean isAttribsInitialized() {
 		return attribsInitialized;
@@ -49,8 +49,14 @@ public class BuildRequestHandler extends AbstractRestHandler {
 		RequestBody req = parse(request, response, "domain");
 		RequestData data = RequestData.fromJson(req.body);
 		data.setDomain(req.queue);
-		service.buildClassifier(data);
-		response.setBody(new ResponseData());
+		String jobId = service.buildClassifier(data);
+		ResponseData res = new ResponseData();
+		if(jobId != null)
+		{
+			res.setJobId(jobId);
+			res.setMessage("Training job submitted. Query status at "+TrainingJobRequestHandler.URL.replace("{id}", jobId));
+		}
+		response.setBody(res);
 		response.setContentType("text/json");
 		response.setResponseCode(202);
 		log.info("Submitted request for build classifier: "+req.body);
@@ -15,16 +15,24 @@
  */
 package reactivetechnologies.sentigrade.engine.weka.handlers;
 
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
 import org.reactivetechnologies.ticker.rest.AbstractRestHandler;
 import org.restexpress.Request;
 import org.restexpress.Response;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import reactivetechnologies.sentigrade.dto.RequestData;
 import reactivetechnologies.sentigrade.dto.ResponseData;
+import reactivetechnologies.sentigrade.err.ModelNotFoundException;
+import reactivetechnologies.sentigrade.err.RequestRejectedException;
 import reactivetechnologies.sentigrade.services.ModelExecutionService;
 
 @Service
@@ -33,7 +41,12 @@ public class ClassifyRequestHandler extends AbstractRestHandler {
 	private static final Logger log = LoggerFactory.getLogger(ClassifyRequestHandler.class);
 	@Autowired
 	ModelExecutionService service;
+	@Value("${weka.classifier.classify.responseTimeoutMillis:30000}")
+	private long responseTimeoutMillis;
 
+	/**
+	 * An optional query parameter 'deadline' specifies the max milliseconds for a full analysis, before falling back to a faster one.
+	 */
 	static final String URL = "/class/{domain}";
 	@Override
 	public String url() {
@@ -51,10 +64,42 @@ public class ClassifyRequestHandler extends AbstractRestHandler {
 		RequestData data = new RequestData(req.body);
 		data.setDomain(req.queue);
 		data.setUseSentimentVector(true);
+		String deadline = (String) request.getQueryStringMap().get("deadline");
+		if(deadline != null)
+		{
+			try {
+				data.setDeadlineMillis(Long.parseLong(deadline));
+			} catch (NumberFormatException e) {
+				reject(response, 400, "Invalid deadline '"+deadline+"', expecting milliseconds");
+				return;
+			}
+		}
 		
-		String result = service.classifyInstance(data);
+		String result;
+		CompletableFuture<String> future = service.classifyInstanceAsync(data);
+		try {
+			result = future.get(responseTimeoutMillis, TimeUnit.MILLISECONDS);
+		} catch (TimeoutException e) {
+			//not run, if still in queue
+			future.cancel(false);
+			reject(response, 503, data.getDomain()+"| Classification did not complete in "+responseTimeoutMillis+" ms");
+			return;
+		} catch (ExecutionException e) {
+			if(e.getCause() instanceof RequestRejectedException)
+			{
+				reject(response, 503, e.getCause().getMessage());
+				return;
+			}
+			if(e.getCause() instanceof ModelNotFoundException)
+			{
+				reject(response, 404, e.getCause().getMessage());
+				return;
+			}
+			throw e;
+		}
 		ResponseData res = new ResponseData();
 		res.setClassification(result);
+		res.setTier(data.getAnalysisTier());
 		response.setContentType("text/json");
 		response.setBody(res);
 		response.setResponseCode(200);
@@ -62,4 +107,15 @@ public class ClassifyRequestHandler extends AbstractRestHandler {
 		
 	}
 	
+	private static void reject(Response response, int status, String message)
+	{
+		ResponseData res = new ResponseData();
+		res.setCode(ResponseData.CODE_NOK);
+		res.setMessage(message);
+		response.setContentType("text/json");
+		response.setBody(res);
+		response.setResponseCode(status);
+		log.warn(message);
+	}
+	
 }
@@ -197,6 +197,57 @@ class ConcurrentTextDirectoryLoader extends TextDirectoryLoader {
 		return structure;
 	}
 	
+	/**
+	 * Start reading the class directories in the background, handing over each file content as a training tuple. Reading 
+	 * proceeds only as fast as the returned processor is consumed.
+	 * @param bufferSize max number of tuples read ahead
+	 * @return
+	 * @throws IOException
+	 */
+	public TupleStreamProcessor streamDataSet(int bufferSize) throws IOException {
+		RootLevelDirectoryVisitor visitor = new RootLevelDirectoryVisitor(getDirPath());
+		visitor.setClasses(getClassDirs());
+		if (StringUtils.hasText(m_charSet)) {
+			visitor.setFileCharset(Charset.forName(m_charSet));
+		}
+		TupleStreamProcessor proc = new TupleStreamProcessor(new LinkedBlockingQueue<>(bufferSize), getClassDirs().size(), bufferSize);
+		log.info("WekaFormat| Streaming class directories "+getClassDirs());
+		visitAsync(visitor, proc);
+		return proc;
+	}
+	/**
+	 * Start reading tabbed line dataset in the background, handing over each line as a training tuple. Reading 
+	 * proceeds only as fast as the returned processor is consumed.
+	 * @param scoreMap
+	 * @param isClassFirst
+	 * @param bufferSize max number of tuples read ahead
+	 * @return
+	 * @throws IOException
+	 */
+	public TupleStreamProcessor streamDataSet(Map<Integer, String> scoreMap, boolean isClassFirst, int bufferSize) throws IOException {
+		RootLevelDirectoryVisitor visitor = new RootLevelDirectoryVisitor(getDirPath());
+		visitor.setUseBufferedReader(true);
+		visitor.setLogFilename(true);
+		TupleStreamProcessor proc = new TupleStreamProcessor(new LinkedBlockingQueue<>(bufferSize), 1, bufferSize);
+		proc.setTabbedFormat(scoreMap, isClassFirst);
+		log.info("TabbedFormat| Streaming tabbed line texts with score map "+scoreMap);
+		visitAsync(visitor, proc);
+		return proc;
+	}
+	/*
+	 * Single reader and processor threads, which terminate once the directory is read through.
+	 */
+	private void visitAsync(RootLevelDirectoryVisitor visitor, TupleStreamProcessor proc) throws IOException
+	{
+		ExecutorService reader = Executors.newSingleThreadExecutor();
+		ExecutorService processor = Executors.newSingleThreadExecutor();
+		try {
+			visitor.doVisit(reader, processor, proc);
+		} finally {
+			reader.shutdown();
+			processor.shutdown();
+		}
+	}
 	private Instances getStructure(Map<Integer, String> scoreMap, boolean isClassFirst) throws IOException
 	{
 		ArrayList<Attribute> atts = new ArrayList<Attribute>(2);
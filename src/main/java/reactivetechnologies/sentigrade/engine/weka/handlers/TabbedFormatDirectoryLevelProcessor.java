@@ -58,7 +58,13 @@ class TabbedFormatDirectoryLevelProcessor extends AsyncFileReadProcessor
 		classAttribs = Collections.list(struct.classAttribute().enumerateValues());
 	}
 	
-	private String getClass(String cls)
+	/**
+	 * Map a numeric class code using the score map, if present.
+	 * @param cls
+	 * @param scoreMap
+	 * @return
+	 */
+	static String mapClass(String cls, Map<Integer, String> scoreMap)
 	{
 		try 
 		{
@@ -72,21 +78,34 @@ class TabbedFormatDirectoryLevelProcessor extends AsyncFileReadProcessor
 		}
 		return cls;
 	}
+	/**
+	 * Split a tab separated line into text and (mapped) class.
+	 * @param line
+	 * @param isClassAtFirst
+	 * @param scoreMap
+	 * @return [text, class]
+	 */
+	static String[] splitLine(String line, boolean isClassAtFirst, Map<Integer, String> scoreMap)
+	{
+		String [] split = line.split("\t");
+		
+		Assert.isTrue(split.length == 2, "Not a tab separated line '"+line+"'");
+		int c = isClassAtFirst ? 0: 1;
+		int t = c == 0 ? 1 : 0;
+		return new String[]{split[t], mapClass(split[c], scoreMap)};
+	}
 		
 	@Override
 	protected void updateInstance(FileContent fc) {
 		double[] newInst = new double[2];
-		String [] split = fc.getContent().split("\t");
-		
-		Assert.isTrue(split.length == 2, "Not a tab separated line '"+fc.getContent()+"'");
+		String [] split = splitLine(fc.getContent(), isClassAtFirst, scoreMap);
 		int c = isClassAtFirst ? 0: 1;
 		int t = c == 0 ? 1 : 0;
 		
-		newInst[t] = data.attribute(t).addStringValue(split[t]);
-		String cls = getClass(split[c]);
+		newInst[t] = data.attribute(t).addStringValue(split[0]);
 		
-		newInst[c] = classAttribs.indexOf(cls);
-		Assert.isTrue(newInst[c] != -1, "Unable to map class attribute for '"+split[c]+"'");
+		newInst[c] = classAttribs.indexOf(split[1]);
+		Assert.isTrue(newInst[c] != -1, "Unable to map class attribute for '"+fc.getContent()+"'");
 		
 		classIdx.getAndIncrement();
 		data.add(new DenseInstance(1.0, newInst));
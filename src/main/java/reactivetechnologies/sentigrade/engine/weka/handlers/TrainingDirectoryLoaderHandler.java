@@ -26,7 +26,9 @@ import java.util.Set;
 import java.util.TreeMap;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ThreadFactory;
@@ -47,6 +49,8 @@ import reactivetechnologies.sentigrade.dto.VectorRequestDataFactoryBean;
 import reactivetechnologies.sentigrade.engine.ClassificationModelEngine;
 import reactivetechnologies.sentigrade.engine.weka.AbstractClassificationModelEngine;
 import reactivetechnologies.sentigrade.engine.weka.TrainingDataLoader;
+import reactivetechnologies.sentigrade.engine.weka.service.TrainingJob;
+import reactivetechnologies.sentigrade.engine.weka.service.TrainingJobService;
 import reactivetechnologies.sentigrade.files.DirectoryEventHandler;
 import reactivetechnologies.sentigrade.files.DirectoryWatcher;
 import reactivetechnologies.sentigrade.services.ModelExecutionService;
@@ -78,9 +82,15 @@ public class TrainingDirectoryLoaderHandler implements DirectoryEventHandler, Tr
 	private long maxAwait;
 	@Autowired
 	private VectorRequestDataFactoryBean dataFactory;
+	@Autowired
+	private TrainingJobService trainingJobs;
+	@Value("${weka.classifier.train.streaming:false}")
+	private boolean streaming;
+	@Value("${weka.classifier.train.streaming.buffer:1000}")
+	private int streamBuffer;
 	/**
 	 * This is an internal API. Kept public just for a quick testing purpose.
-	 * Submit a new training dataset.
+	 * Submit a new training dataset. Waits for the training job to complete, if the classifier is trained as a background job.
 	 * @param i
 	 * @throws Exception 
 	 */
@@ -88,7 +98,9 @@ public class TrainingDirectoryLoaderHandler implements DirectoryEventHandler, Tr
 	{
 		VectorRequestData data = dataFactory.getObject();
 		data.setTextInstances(i, ClassificationModelEngine.getDomain(domain));
-		classifService.buildClassifier(data);
+		String jobId = classifService.buildClassifier(data);
+		if(jobId != null)
+			awaitJob(jobId);
 	}
 	/* (non-Javadoc)
 	 * @see reactivetechnologies.sentigrade.engine.weka.handlers.TrainingDataLoader#loadFromRootDirectory(java.lang.String, java.lang.String)
@@ -105,37 +117,47 @@ public class TrainingDirectoryLoaderHandler implements DirectoryEventHandler, Tr
 	@Override
 	public Instances loadFromFormattedText(String domain, String dir, String tabFormat) throws IOException
 	{
-		// default binary class neg,pos
 		ConcurrentTextDirectoryLoader loader = newLoader(dir);
-		boolean clsAtFirst;
-		Map<Integer, String> scoreMap = new TreeMap<>();
-		String [] split = tabFormat.split(" ");
-		clsAtFirst = split.length >= 1 && split[0].toUpperCase().startsWith("SCORE");
-		if(split.length >= 3)
+		TabFormat format = new TabFormat(tabFormat);
+		log.info("Start processing tabbed line texts, with classAtFirst?"+format.clsAtFirst+" and score map "+format.scoreMap);
+		return loader.getDataSet(format.scoreMap, format.clsAtFirst);
+	}
+	/**
+	 * Parsed tab format, as 'score|sentence sentence|score [score map]'.
+	 */
+	private static class TabFormat
+	{
+		final boolean clsAtFirst;
+		final Map<Integer, String> scoreMap = new TreeMap<>();
+		TabFormat(String tabFormat)
 		{
-			String[] map = split[2].split(";"); //score map
-			String[] k;
-			for(String e: map)
+			// default binary class neg,pos
+			String [] split = tabFormat != null ? tabFormat.split(" ") : new String[0];
+			clsAtFirst = split.length >= 1 && split[0].toUpperCase().startsWith("SCORE");
+			if(split.length >= 3)
 			{
-				k = e.split("=");
-				if(k.length == 2)
+				String[] map = split[2].split(";"); //score map
+				String[] k;
+				for(String e: map)
 				{
-					try {
-						scoreMap.put(Integer.valueOf(k[0]), k[1]);
-					} catch (NumberFormatException e1) {
+					k = e.split("=");
+					if(k.length == 2)
+					{
+						try {
+							scoreMap.put(Integer.valueOf(k[0]), k[1]);
+						} catch (NumberFormatException e1) {
 						
+						}
 					}
 				}
 			}
-		}
 		
-		if(scoreMap.isEmpty())
-		{
-			scoreMap.put(0, "neg");
-			scoreMap.put(1, "pos");
+			if(scoreMap.isEmpty())
+			{
+				scoreMap.put(0, "neg");
+				scoreMap.put(1, "pos");
+			}
 		}
-		log.info("Start processing tabbed line texts, with classAtFirst?"+clsAtFirst+" and score map "+scoreMap);
-		return loader.getDataSet(scoreMap, clsAtFirst);
 	}
 	private ConcurrentTextDirectoryLoader newLoader(String dir) throws FileNotFoundException, IOException
 	{
@@ -147,6 +169,56 @@ public class TrainingDirectoryLoaderHandler implements DirectoryEventHandler, Tr
 		
 		return loader;
 	}
+	/**
+	 * Stream the training texts from the directory, straight into the classifier. Texts are read only as fast as they are
+	 * vectorized and trained on, and training starts with the first text read.
+	 * @param domain
+	 * @param dir
+	 * @param isTabbedLineDataset if the directory has tabbed line text files, else it is in Weka text directory format
+	 * @param tabFormat
+	 * @throws Exception
+	 */
+	public void streamTrainingData(String domain, String dir, boolean isTabbedLineDataset, String tabFormat) throws Exception
+	{
+		ConcurrentTextDirectoryLoader loader = newLoader(dir);
+		VectorRequestData data = dataFactory.getObject();
+		data.setDomain(ClassificationModelEngine.getDomain(domain));
+		TupleStreamProcessor stream;
+		if (isTabbedLineDataset) {
+			TabFormat format = new TabFormat(tabFormat);
+			data.getClasses().addAll(format.scoreMap.values());
+			stream = loader.streamDataSet(format.scoreMap, format.clsAtFirst, streamBuffer);
+		}
+		else
+		{
+			data.getClasses().addAll(VectorRequestData.classAttrNominals(loader.getStructure()));
+			stream = loader.streamDataSet(streamBuffer);
+		}
+		data.setTupleSource(stream.iterator());
+		try {
+			String jobId = classifService.buildClassifier(data);
+			if(jobId != null)
+			{
+				//a background job pulls from the stream
+				awaitJob(jobId);
+			}
+		} finally {
+			//let the readers complete, if training was aborted
+			stream.abort();
+		}
+	}
+	/*
+	 * Wait for the background training job to complete. Throws if the job failed, so that the trigger is not marked done.
+	 */
+	private void awaitJob(String jobId) throws InterruptedException, ExecutionException
+	{
+		TrainingJob job = trainingJobs.get(jobId);
+		try {
+			job.get();
+		} catch (CancellationException e) {
+			log.warn("Training job "+jobId+" was cancelled");
+		}
+	}
 	private class LoaderTask implements Runnable
 	{
 		
@@ -167,7 +239,10 @@ public class TrainingDirectoryLoaderHandler implements DirectoryEventHandler, Tr
 				log.info(domain+"| Root dir -> "+dir);
 				Path p = ConfigUtil.renameFileExtn(f, TRIGGER_FILE_PROC_EXTN);
 				
-				if (trigger.isTabbedLineDataset) {
+				if (streaming) {
+					streamTrainingData(domain, dir, trigger.isTabbedLineDataset, trigger.tabFormat);
+				}
+				else if (trigger.isTabbedLineDataset) {
 					loadAsSpaceDelimitedText(domain, dir, trigger.tabFormat);
 				}
 				else
@@ -0,0 +1,84 @@
+/**
+ * Copyright 2017 esutdal
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package reactivetechnologies.sentigrade.engine.weka.handlers;
+
+import org.reactivetechnologies.ticker.rest.AbstractRestHandler;
+import org.restexpress.Request;
+import org.restexpress.Response;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import reactivetechnologies.sentigrade.dto.ResponseData;
+import reactivetechnologies.sentigrade.engine.weka.service.TrainingJob;
+import reactivetechnologies.sentigrade.engine.weka.service.TrainingJobService;
+
+/**
+ * Status and progress of a background training job, on GET. A POST cancels the job.
+ */
+@Service
+public class TrainingJobRequestHandler extends AbstractRestHandler {
+
+	private static final Logger log = LoggerFactory.getLogger(TrainingJobRequestHandler.class);
+	@Autowired
+	TrainingJobService jobs;
+
+	static final String URL = "/job/{id}";
+	@Override
+	public String url() {
+		return URL;
+	}
+	
+	@Override
+	protected void doGet(Request request, Response response) throws Exception {
+		String id = request.getHeader("id");
+		TrainingJob job = jobs.get(id);
+		if(job == null)
+		{
+			notFound(response, id);
+			return;
+		}
+		response.setContentType("text/json");
+		response.setBody(job);
+		response.setResponseCode(200);
+	}
+
+	@Override
+	protected void doPost(Request request, Response response) throws Exception {
+		String id = request.getHeader("id");
+		TrainingJob job = jobs.cancel(id);
+		if(job == null)
+		{
+			notFound(response, id);
+			return;
+		}
+		response.setContentType("text/json");
+		response.setBody(job);
+		response.setResponseCode(200);
+		log.info("Cancel requested for training job: "+job);
+	}
+	
+	private static void notFound(Response response, String id)
+	{
+		ResponseData res = new ResponseData();
+		res.setCode(ResponseData.CODE_NOK);
+		res.setMessage("No training job found by id "+id);
+		response.setContentType("text/json");
+		response.setBody(res);
+		response.setResponseCode(404);
+	}
+}
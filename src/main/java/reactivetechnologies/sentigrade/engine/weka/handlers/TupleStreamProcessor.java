@@ -0,0 +1,142 @@
+/**
+ * Copyright 2017 esutdal
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package reactivetechnologies.sentigrade.engine.weka.handlers;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import reactivetechnologies.sentigrade.dto.RequestData.Tuple;
+import reactivetechnologies.sentigrade.err.OperationFailedUnexpectedly;
+import reactivetechnologies.sentigrade.files.AsyncFileReadProcessor;
+import reactivetechnologies.sentigrade.files.FileContent;
+/**
+ * A processor that hands over the file contents as training tuples, through a bounded buffer, instead of
+ * collecting them into a dataset. The readers are held back when the consumer falls behind, so that the training data is never held 
+ * in memory as a whole. By default the class is the name of the class directory the file was read from. Set a tabbed format, for
+ * tab separated line datasets.
+ * @author esutdal
+ *
+ */
+class TupleStreamProcessor extends AsyncFileReadProcessor
+{
+	private static final Tuple END = new Tuple(null, null);
+	private final BlockingQueue<Tuple> tuples;
+	private volatile boolean aborted;
+	private boolean tabbed;
+	private boolean isClassAtFirst;
+	private Map<Integer, String> scoreMap;
+	/**
+	 * 
+	 * @param queue
+	 * @param dirCount
+	 * @param bufferSize
+	 */
+	public TupleStreamProcessor(BlockingQueue<FileContent> queue, int dirCount, int bufferSize) {
+		super(queue, dirCount);
+		tuples = new ArrayBlockingQueue<>(bufferSize);
+		isOutputFilename = false;
+	}
+	/**
+	 * Parse each content as a tab separated line '[text] \t [class]'.
+	 * @param scoreMap
+	 * @param isClassAtFirst
+	 */
+	public void setTabbedFormat(Map<Integer, String> scoreMap, boolean isClassAtFirst)
+	{
+		this.tabbed = true;
+		this.scoreMap = scoreMap;
+		this.isClassAtFirst = isClassAtFirst;
+	}
+	
+	@Override
+	protected void updateInstance(FileContent fc) {
+		if(aborted)
+			return;
+		Tuple t;
+		if (tabbed) {
+			String[] split = TabbedFormatDirectoryLevelProcessor.splitLine(fc.getContent(), isClassAtFirst, scoreMap);
+			t = new Tuple(split[0], split[1]);
+		}
+		else
+			t = new Tuple(fc.getContent(), fc.getSubdirPath());
+		
+		try {
+			tuples.put(t);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+	
+	@Override
+	public void run() {
+		try {
+			super.run();
+		} 
+		finally {
+			if (!aborted) {
+				try {
+					tuples.put(END);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		}
+	}
+	/**
+	 * Stop handing over tuples. The remaining file contents are drained and discarded, so that the readers can complete.
+	 */
+	public void abort()
+	{
+		aborted = true;
+		tuples.clear();
+	}
+	/**
+	 * A blocking iterator over the tuples, as they are read. To be consumed by a single thread.
+	 * @return
+	 */
+	public Iterator<Tuple> iterator()
+	{
+		return new Iterator<Tuple>() {
+			private Tuple next;
+			@Override
+			public boolean hasNext() {
+				if(next == null)
+				{
+					try {
+						next = tuples.take();
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+						throw new OperationFailedUnexpectedly(e);
+					}
+				}
+				return next != END;
+			}
+
+			@Override
+			public Tuple next() {
+				if(!hasNext())
+					throw new NoSuchElementException();
+				Tuple t = next;
+				next = null;
+				return t;
+			}
+		};
+	}
+	
+}
@@ -38,10 +38,10 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardOpenOption;
 import java.util.Date;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.ThreadFactory;
+import java.util.List;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.reactivetechnologies.ticker.utils.CommonHelper;
 import org.slf4j.Logger;
@@ -52,9 +52,11 @@ import org.springframework.beans.factory.annotation.Value;
 import org.springframework.util.Assert;
 
 import reactivetechnologies.sentigrade.engine.weka.dto.WekaRegressionModel;
+import reactivetechnologies.sentigrade.engine.weka.service.EngineWorkerPool.Strand;
 import reactivetechnologies.sentigrade.files.ResourceLock;
 import reactivetechnologies.sentigrade.files.ResourceLockedException;
 import weka.classifiers.Classifier;
+import weka.core.Attribute;
 import weka.core.Instances;
 
 /**
@@ -79,7 +81,7 @@ public class CachedClassificationModelEngine extends WekaClassificationModelEngi
 	 * 
 	 */
 	private static final long serialVersionUID = 1643930081471580071L;
-	private ScheduledExecutorService thread;
+	private ScheduledFuture<?> syncSchedule;
 	@Autowired
 	CommonHelper utils;
 	/**
@@ -96,38 +98,41 @@ public class CachedClassificationModelEngine extends WekaClassificationModelEngi
 		super.buildClassifier(data);
 	}
 
+	/**
+	 * Dumps the model if updated since the last dump. The snapshot is served from memory, since the copy of
+	 * an unchanged classifier is reused, rather than reloading the dumped file.
+	 */
 	@Override
 	public WekaRegressionModel generateModelSnapshot() {
 		if (modelUpdated.compareAndSet(true, false)) {
-			dumpModelSnapshot();
-		}
-		try {
-			return loadModel(false);
-		} catch (IOException e) {
-			log.info(domain+"| Unable to load a cached model. Will fetch transient");
-			return super.generateModelSnapshot();
+			return dumpModelSnapshot();
 		}
+		return super.generateModelSnapshot();
 	}
 	/**
 	 * Dump the built model to some media. This is done to refer the cached
 	 * instance for performance improvement. This method is synchronized as there is a write operation involved, 
 	 * and the invocation can originate from client as well as the background thread. Also this method will only
 	 * log any IOException caught. This is done so that the client invocations do not get any exception, since the
-	 * process should not break on failure at this point.
+	 * process should not break on failure at this point. The lock is separate from the one held by the build thread,
+	 * so that writing to file does not hold up model updates.
 	 * @return 
 	 */
-	private synchronized WekaRegressionModel dumpModelSnapshot() 
+	private WekaRegressionModel dumpModelSnapshot() 
 	{
-		WekaRegressionModel model = super.generateModelSnapshot();
-		try 
-		{
-			byte[] b = utils.marshall(model);
-			saveBytes(b);
-		} catch (IOException e) {
-			log.error(domain+"| While trying to save model", e);
+		synchronized (dumpLock) {
+			WekaRegressionModel model = super.generateModelSnapshot();
+			try 
+			{
+				byte[] b = utils.marshall(model);
+				saveBytes(b);
+			} catch (IOException e) {
+				log.error(domain+"| While trying to save model", e);
+			}
+			return model;
 		}
-		return model;
 	}
+	private final Object dumpLock = new Object();
 	private ResourceLock fileLock;
 	private void lockCacheArea(File f) throws IOException
 	{
@@ -206,7 +211,8 @@ public class CachedClassificationModelEngine extends WekaClassificationModelEngi
 		}
 	}
 	/**
-	 * The properties which will need to be sync'd from file system.
+	 * The properties which will need to be sync'd from file system. The vocabulary is restored from the term list 
+	 * embedded in the model, so that the term indices are the ones the model was trained with.
 	 * @param model
 	 */
 	private void unmarshallBuildState(WekaRegressionModel model)
@@ -215,6 +221,21 @@ public class CachedClassificationModelEngine extends WekaClassificationModelEngi
 		lastBuildAt = model.getGeneratedOn();
 		attribsInitialized = model.isAttribsInitialized();
 		structure = model.getStructure();
+		restoreVocabulary(model.getVocabulary());
+		classifierReplaced();
+	}
+	private void restoreVocabulary(List<String> terms)
+	{
+		if(terms == null || structure == null)
+			return;
+		try 
+		{
+			Attribute classAttr = structure.classIndex() >= 0 ? structure.classAttribute() : structure.attribute(structure.numAttributes() - 1);
+			vocabulary = TermDictionary.of(structure.numAttributes() - 1, classAttr, terms);
+			log.info(domain+"| Restored vocabulary from cached model. "+vocabulary);
+		} catch (IllegalArgumentException e) {
+			log.warn(domain+"| Unable to restore vocabulary from cached model. Term indices will be reassigned, and may not match the cached model", e);
+		}
 	}
 	/**
 	 * 
@@ -254,18 +275,15 @@ public class CachedClassificationModelEngine extends WekaClassificationModelEngi
 		}
 		return false;
 	}
+	/*
+	 * File sync runs on a separate strand of the shared worker pool, so that writing to file does not queue up 
+	 * behind model updates. A tick is skipped if the last one is still pending.
+	 */
 	private void initSyncThread()
 	{
-		thread = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
-			
-			@Override
-			public Thread newThread(Runnable r) {
-				Thread t = new Thread(r, "CachedClassifSyncThread-"+domain);
-				t.setDaemon(true);
-				return t;
-			}
-		});
-		thread.scheduleWithFixedDelay(new Runnable() {
+		final Strand syncStrand = workerPool.strand(domain+"-sync");
+		final AtomicBoolean syncPending = new AtomicBoolean();
+		final Runnable syncTask = new Runnable() {
 			
 			@Override
 			public void run() {
@@ -273,7 +291,7 @@ public class CachedClassificationModelEngine extends WekaClassificationModelEngi
 				{
 					if (modelUpdated.compareAndSet(true, false)) {
 						WekaRegressionModel model = dumpModelSnapshot();
-						log.info(domain + "| File sync task ran..");
+						log.info(domain + "| File sync task ran.. " + getSnapshotStats() + "; " + getQueueStats());
 						if(printModelOnDump)
 						{
 							log.info(model.getTrainedClassifier()+"");
@@ -285,6 +303,17 @@ public class CachedClassificationModelEngine extends WekaClassificationModelEngi
 				catch (Exception e) {
 					log.error("Exception in file sync task", e);
 				}
+				finally {
+					syncPending.set(false);
+				}
+			}
+		};
+		syncSchedule = workerPool.getScheduler().scheduleWithFixedDelay(new Runnable() {
+			
+			@Override
+			public void run() {
+				if(syncPending.compareAndSet(false, true))
+					syncStrand.execute(syncTask);
 			}
 		}, 0, syncDelay, TimeUnit.SECONDS);
 	}
@@ -309,8 +338,10 @@ public class CachedClassificationModelEngine extends WekaClassificationModelEngi
 	
 	@Override
 	protected void onDestruction() {
+		if(syncSchedule != null)
+			syncSchedule.cancel(false);
 		dumpModelSnapshot();
-		log.info(domain+"| File sync task run on stop");
+		log.info(domain+"| File sync task run on stop. " + getSnapshotStats());
 		try {
 			fileLock.close();
 		} catch (IOException e) {
@@ -0,0 +1,202 @@
+/**
+ * Copyright 2017 esutdal
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package reactivetechnologies.sentigrade.engine.weka.service;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+/**
+ * A fixed size worker pool shared by the classification engines of all domains. Each domain gets a serial 
+ * {@linkplain Strand} on the pool, so that tasks of a domain execute one at a time, in submission order, while
+ * the thread count does not grow with the number of domains. Periodic tasks are triggered from a shared scheduler,
+ * and are expected to hand over the work to a strand.
+ * @author esutdal
+ *
+ */
+@Component
+public class EngineWorkerPool {
+
+	private static final Logger log = LoggerFactory.getLogger(EngineWorkerPool.class);
+	@Value("${weka.classifier.workers.threads:0}")
+	private int nThreads;
+	@Value("${weka.classifier.workers.strand.maxRun:16}")
+	private int maxRun;
+	private ExecutorService workers;
+	private ScheduledExecutorService scheduler;
+	private final ConcurrentMap<String, Strand> strands = new ConcurrentHashMap<>();
+	
+	@PostConstruct
+	void init()
+	{
+		nThreads = nThreads > 0 ? nThreads : Runtime.getRuntime().availableProcessors();
+		maxRun = Math.max(1, maxRun);
+		workers = Executors.newFixedThreadPool(nThreads, new ThreadFactory() {
+			int n = 0;
+			@Override
+			public synchronized Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "EngineWorker-"+(n++));
+				t.setDaemon(true);
+				return t;
+			}
+		});
+		scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "EngineScheduler");
+				t.setDaemon(true);
+				return t;
+			}
+		});
+		log.info("Engine worker pool started with "+nThreads+" threads");
+	}
+	@PreDestroy
+	void destroy()
+	{
+		scheduler.shutdown();
+		workers.shutdown();
+		try {
+			workers.awaitTermination(30, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		log.info("Engine worker pool stopped. "+getStrandStats());
+	}
+	/**
+	 * The shared scheduler, for triggering periodic tasks. Scheduled tasks should be short, and submit any real work to a strand.
+	 * @return
+	 */
+	public ScheduledExecutorService getScheduler() {
+		return scheduler;
+	}
+	/**
+	 * Get the strand by the given name, creating if not present.
+	 * @param name
+	 * @return
+	 */
+	public Strand strand(String name)
+	{
+		Strand s = strands.get(name);
+		if(s == null)
+		{
+			strands.putIfAbsent(name, new Strand(name));
+			s = strands.get(name);
+		}
+		return s;
+	}
+	/**
+	 * Queue depth and execution counts, per strand.
+	 * @return
+	 */
+	public Map<String, String> getStrandStats()
+	{
+		Map<String, String> stats = new TreeMap<>();
+		for(Strand s : strands.values())
+			stats.put(s.name, s.toString());
+		return stats;
+	}
+	/**
+	 * A serial mailbox on the shared pool. A strand occupies a worker only while it has tasks, and gives up the 
+	 * worker after a max run of tasks, so that a busy domain does not starve the others.
+	 */
+	public final class Strand implements Runnable
+	{
+		private final String name;
+		private final ConcurrentLinkedQueue<Runnable> mailbox = new ConcurrentLinkedQueue<>();
+		private final AtomicInteger pending = new AtomicInteger();
+		private final AtomicLong executed = new AtomicLong();
+		private volatile int maxDepth;
+		private Strand(String name) {
+			this.name = name;
+		}
+		/**
+		 * Submit a task, to be executed after the ones submitted before.
+		 * @param task
+		 */
+		public void execute(Runnable task)
+		{
+			mailbox.add(task);
+			int depth = pending.incrementAndGet();
+			if(depth > maxDepth)
+				maxDepth = depth;
+			if(depth == 1)
+				workers.execute(this);
+		}
+		@Override
+		public void run() {
+			int run = 0;
+			boolean more = false;
+			try 
+			{
+				do 
+				{
+					Runnable task = mailbox.poll();
+					try {
+						task.run();
+					} catch (Exception e) {
+						log.error(name+"| Uncaught exception in strand task", e);
+					}
+					finally {
+						executed.incrementAndGet();
+						more = pending.decrementAndGet() > 0;
+					}
+				} 
+				while (more && ++run < maxRun);
+			} 
+			finally 
+			{
+				//yield the worker with tasks still pending, or hand them over if an Error escaped the task
+				if(more)
+					workers.execute(this);
+			}
+		}
+		/**
+		 * @return number of tasks submitted, but not yet completed
+		 */
+		public int getQueueDepth() {
+			return pending.get();
+		}
+		public int getMaxQueueDepth() {
+			return maxDepth;
+		}
+		public long getExecuted() {
+			return executed.get();
+		}
+		public String getName() {
+			return name;
+		}
+		@Override
+		public String toString() {
+			return "queueDepth=" + getQueueDepth() + ", maxQueueDepth=" + maxDepth + ", executed=" + executed.get();
+		}
+	}
+}
@@ -0,0 +1,146 @@
+/**
+ * Copyright 2017 esutdal
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package reactivetechnologies.sentigrade.engine.weka.service;
+
+import java.util.Arrays;
+
+import weka.core.Attribute;
+import weka.core.Instance;
+import weka.core.tokenizers.Tokenizer;
+
+/**
+ * A hashing vectorizer, that maps tokens into a fixed number of hash buckets, without any dictionary. The 
+ * bucket of a token is derived from the murmur3 hash of its characters. If signed, one more bit of the hash decides whether
+ * it adds or subtracts, so that collisions tend to cancel out rather than accumulate. Signed buckets can have negative
+ * values, which count based learners (for e.g NaiveBayesMultinomial) reject; for those the buckets are plain token counts.
+ * <p>
+ * Memory is fixed irrespective of the amount of text seen, and instances are stateless, hence can be shared across 
+ * threads for parallel vectorization.
+ * @author esutdal
+ *
+ */
+public class FeatureHasher extends TextVectorizer {
+
+	private final boolean signed;
+	/**
+	 * 
+	 * @param buckets number of hash buckets (feature attributes), less than 2<sup>30</sup>
+	 * @param classAttribute the nominal class attribute
+	 * @param signed whether a token adds or subtracts from its bucket, else the buckets are non negative counts
+	 */
+	public FeatureHasher(int buckets, Attribute classAttribute, boolean signed) {
+		super("hashed", "h", buckets, classAttribute);
+		if(buckets <= 0 || buckets >= (1 << 30))
+			throw new IllegalArgumentException("Invalid number of buckets "+buckets);
+		this.signed = signed;
+	}
+	/**
+	 * A signed hasher.
+	 * @param buckets number of hash buckets (feature attributes), less than 2<sup>30</sup>
+	 * @param classAttribute the nominal class attribute
+	 */
+	public FeatureHasher(int buckets, Attribute classAttribute) {
+		this(buckets, classAttribute, true);
+	}
+	
+	/**
+	 * Murmur3 (x86 32 bit) hash of the characters, taking 2 chars per block.
+	 * @param s
+	 * @return
+	 */
+	static int murmur3(CharSequence s)
+	{
+		final int c1 = 0xcc9e2d51, c2 = 0x1b873593;
+		int h = 0x9747b28c;
+		int len = s.length();
+		int i = 0;
+		for (; i + 1 < len; i += 2) {
+			int k = s.charAt(i) | (s.charAt(i + 1) << 16);
+			k *= c1;
+			k = Integer.rotateLeft(k, 15);
+			k *= c2;
+			h ^= k;
+			h = Integer.rotateLeft(h, 13);
+			h = h * 5 + 0xe6546b64;
+		}
+		if (i < len) {
+			int k = s.charAt(i);
+			k *= c1;
+			k = Integer.rotateLeft(k, 15);
+			k *= c2;
+			h ^= k;
+		}
+		h ^= len * 2;
+		h ^= h >>> 16;
+		h *= 0x85ebca6b;
+		h ^= h >>> 13;
+		h *= 0xc2b2ae35;
+		h ^= h >>> 16;
+		return h;
+	}
+	/**
+	 * Bucket of the token.
+	 * @param token
+	 * @return
+	 */
+	public int bucketOf(CharSequence token)
+	{
+		return (murmur3(token) & 0x7fffffff) % numFeatures;
+	}
+	
+	@Override
+	public Instance vectorize(String text, double classValue, double weight, Tokenizer tokenizer)
+	{
+		//bucket index shifted left, with the sign as the lowest bit
+		int[] found = new int[16];
+		int n = 0;
+		tokenizer.tokenize(text);
+		while(tokenizer.hasMoreElements())
+		{
+			int h = murmur3(tokenizer.nextElement());
+			int bucket = (h & 0x7fffffff) % numFeatures;
+			if(n == found.length)
+				found = Arrays.copyOf(found, n * 2);
+			found[n++] = (bucket << 1) | (signed ? h >>> 31 : 0);
+		}
+		Arrays.sort(found, 0, n);
+		
+		int[] indices = new int[n];
+		double[] values = new double[n];
+		int d = 0;
+		for (int j = 0; j < n; j++) {
+			int bucket = found[j] >>> 1;
+			double sign = (found[j] & 1) == 0 ? 1 : -1;
+			if(d > 0 && indices[d-1] == bucket)
+				values[d-1] += sign;
+			else
+			{
+				indices[d] = bucket;
+				values[d++] = sign;
+			}
+		}
+		//drop the buckets that cancelled out
+		int m = 0;
+		for (int j = 0; j < d; j++) {
+			if(values[j] != 0)
+			{
+				indices[m] = indices[j];
+				values[m++] = values[j];
+			}
+		}
+		return newInstance(indices, values, m, classValue, weight);
+	}
+}
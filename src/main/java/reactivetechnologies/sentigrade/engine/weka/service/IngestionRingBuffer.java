@@ -0,0 +1,151 @@
+/**
+ * Copyright 2017 esutdal
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package reactivetechnologies.sentigrade.engine.weka.service;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+/**
+ * A bounded, multi producer single consumer ring buffer. Producers claim a slot by a CAS on the tail sequence, 
+ * and publish it by a write to the slot sequence; so producers do not contend on a lock, and the consumer does not 
+ * contend with producers at all. The consumer drains the published slots in batches. 
+ * <p>Producers wait with a progressive back off when the buffer is full. The consumer is not a dedicated thread; 
+ * it is scheduled by the producer on publishing.
+ * @author esutdal
+ *
+ * @param <E>
+ */
+public class IngestionRingBuffer<E> {
+
+	private final Object[] slots;
+	/*
+	 * Slot sequence: equals the position when free to be written, position+1 when published.
+	 */
+	private final AtomicLongArray sequences;
+	private final int mask;
+	private final AtomicLong tail = new AtomicLong();
+	//written by the consumer only
+	private volatile long head = 0;
+	/**
+	 * 
+	 * @param capacity rounded up to a power of 2
+	 */
+	public IngestionRingBuffer(int capacity) {
+		int size = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+		slots = new Object[size];
+		sequences = new AtomicLongArray(size);
+		for (int i = 0; i < size; i++) {
+			sequences.set(i, i);
+		}
+		mask = size - 1;
+	}
+	public int capacity() {
+		return slots.length;
+	}
+	/**
+	 * Approximate number of pending elements.
+	 * @return
+	 */
+	public int size() {
+		return (int) Math.max(0, tail.get() - head);
+	}
+	/**
+	 * The sequence of slots claimed by producers so far. Every element offered before this call is at 
+	 * a lower sequence.
+	 * @return
+	 */
+	public long claimed() {
+		return tail.get();
+	}
+	/**
+	 * The sequence of slots drained by the consumer so far.
+	 * @return
+	 */
+	public long consumed() {
+		return head;
+	}
+	public boolean isEmpty() {
+		return sequences.get((int) (head & mask)) != head + 1;
+	}
+	/**
+	 * Try to publish without waiting.
+	 * @param e
+	 * @return false if the buffer is full
+	 */
+	public boolean offer(E e) {
+		long pos;
+		while (true) 
+		{
+			pos = tail.get();
+			long seq = sequences.get((int) (pos & mask));
+			if(seq == pos)
+			{
+				if(tail.compareAndSet(pos, pos + 1))
+					break;
+			}
+			else if(seq < pos)
+				return false;//full
+		}
+		int idx = (int) (pos & mask);
+		slots[idx] = e;
+		sequences.set(idx, pos + 1);
+		return true;
+	}
+	/**
+	 * Publish, waiting while the buffer is full.
+	 * @param e
+	 * @throws InterruptedException
+	 */
+	public void put(E e) throws InterruptedException {
+		int spins = 0;
+		while(!offer(e))
+		{
+			if(Thread.interrupted())
+				throw new InterruptedException();
+			if(++spins < 100)
+				Thread.yield();
+			else
+				LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(Math.min(spins, 1000)));
+		}
+	}
+	/**
+	 * Drain the published elements, up to a max. To be invoked by the consumer only.
+	 * @param batch
+	 * @param max
+	 * @return number of elements drained
+	 */
+	@SuppressWarnings("unchecked")
+	public int drainTo(List<? super E> batch, int max) {
+		long h = head;
+		int n = 0;
+		while (n < max) 
+		{
+			int idx = (int) (h & mask);
+			if(sequences.get(idx) != h + 1)
+				break;
+			batch.add((E) slots[idx]);
+			slots[idx] = null;
+			//free the slot for the next lap
+			sequences.set(idx, h + slots.length);
+			h++;
+			n++;
+		}
+		head = h;
+		return n;
+	}
+}
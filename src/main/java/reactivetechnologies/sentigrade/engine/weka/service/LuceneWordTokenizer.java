@@ -100,7 +100,7 @@ class LuceneWordTokenizer extends WordTokenizer implements Closeable{
 		}
 	}
 
-	private Iterator<String> tokens;
+	private transient Iterator<String> tokens;
 
 	private boolean enableStemming;
 	public boolean isEnableStemming() {
@@ -126,9 +126,11 @@ class LuceneWordTokenizer extends WordTokenizer implements Closeable{
 		{
 			try 
 			{
-				analyzer = new EnglishTextTokenizer(s);
+				//reused across strings, the previous stream is closed on open
+				if(analyzer == null)
+					analyzer = new EnglishTextTokenizer();
 				analyzer.setEnableStemming(enableStemming);
-				analyzer.open();
+				analyzer.open(s);
 				tokens = analyzer;
 			} 
 			catch (Exception e) {
@@ -138,7 +140,7 @@ class LuceneWordTokenizer extends WordTokenizer implements Closeable{
 
 	}
 
-	private EnglishTextTokenizer analyzer;
+	private transient EnglishTextTokenizer analyzer;
 	@Override
 	public String getRevision() {
 		return "n/a";
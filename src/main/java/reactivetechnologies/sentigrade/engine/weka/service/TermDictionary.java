@@ -0,0 +1,255 @@
+/**
+ * Copyright 2017 esutdal
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package reactivetechnologies.sentigrade.engine.weka.service;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import weka.core.Attribute;
+import weka.core.Instance;
+import weka.core.tokenizers.Tokenizer;
+
+/**
+ * A growing vocabulary of a domain, that maps tokens to stable attribute indices across training batches. This allows
+ * bag of words training to stream, without rebuilding the word vector filters (and hence the attribute space) for 
+ * every batch.
+ * <p>
+ * The header reserves <i>capacity</i> numeric term attributes upfront, followed by the class attribute. A new token
+ * is assigned the next free term attribute, so the header grows logically while the attribute space seen by the 
+ * classifier stays fixed. Tokens seen after the capacity is exhausted are ignored. The instances emitted are 
+ * {@linkplain SparseInstance}s of term frequencies.
+ * <p>
+ * Thread safe.
+ * @author esutdal
+ *
+ */
+public class TermDictionary extends TextVectorizer {
+
+	private static final int MAGIC = 0x564F4342;
+	private static final int VERSION = 1;
+	
+	private final int capacity;
+	private final ConcurrentMap<String, Integer> index = new ConcurrentHashMap<>();
+	private final AtomicReferenceArray<String> terms;
+	private final AtomicInteger next = new AtomicInteger();
+	private final AtomicLong overflow = new AtomicLong();
+	/**
+	 * 
+	 * @param capacity max number of terms
+	 * @param classAttribute the nominal class attribute
+	 */
+	public TermDictionary(int capacity, Attribute classAttribute) {
+		super("vocabulary", "t", capacity, classAttribute);
+		this.capacity = capacity;
+		terms = new AtomicReferenceArray<>(capacity);
+	}
+	/**
+	 * Number of terms assigned.
+	 * @return
+	 */
+	public int size() {
+		return Math.min(next.get(), capacity);
+	}
+	public int getCapacity() {
+		return capacity;
+	}
+	/**
+	 * Number of token occurrences ignored, since the capacity was exhausted.
+	 * @return
+	 */
+	public long getOverflowCount() {
+		return overflow.get();
+	}
+	/**
+	 * The term at the given attribute index, or null if not assigned.
+	 * @param i
+	 * @return
+	 */
+	public String termAt(int i) {
+		return i < capacity ? terms.get(i) : null;
+	}
+	/**
+	 * The terms assigned so far, in attribute index order.
+	 * @return
+	 */
+	public List<String> getTerms() {
+		int size = size();
+		List<String> list = new ArrayList<>(size);
+		for (int i = 0; i < size; i++) {
+			list.add(terms.get(i));
+		}
+		return list;
+	}
+	/**
+	 * Get the attribute index of the token, assigning the next free one if new.
+	 * @param token
+	 * @return index, or -1 if the capacity is exhausted
+	 */
+	public int indexOf(String token)
+	{
+		Integer i = index.get(token);
+		if(i != null)
+			return i;
+		if(next.get() >= capacity)
+			return -1;
+		synchronized (this) {
+			i = index.get(token);
+			if(i != null)
+				return i;
+			int n = next.get();
+			if(n >= capacity)
+				return -1;
+			terms.set(n, token);
+			index.put(token, n);
+			next.set(n + 1);
+			return n;
+		}
+	}
+	/**
+	 * A dictionary with the given terms assigned, in attribute index order. For restoring the vocabulary shipped with 
+	 * a model snapshot.
+	 * @param capacity max number of terms
+	 * @param classAttribute the nominal class attribute
+	 * @param terms
+	 * @return
+	 * @throws IllegalArgumentException if the terms exceed the capacity, or are not distinct
+	 */
+	public static TermDictionary of(int capacity, Attribute classAttribute, List<String> terms)
+	{
+		TermDictionary dict = new TermDictionary(capacity, classAttribute);
+		int i = 0;
+		for(String term : terms)
+		{
+			if(dict.indexOf(term) != i++)
+				throw new IllegalArgumentException("Terms exceed capacity "+capacity+", or are not distinct, at index "+(i-1));
+		}
+		return dict;
+	}
+	@Override
+	public Instance vectorize(String text, double classValue, double weight, Tokenizer tokenizer)
+	{
+		int[] found = new int[16];
+		int n = 0;
+		tokenizer.tokenize(text);
+		while(tokenizer.hasMoreElements())
+		{
+			int i = indexOf(tokenizer.nextElement());
+			if(i < 0)
+			{
+				overflow.incrementAndGet();
+				continue;
+			}
+			if(n == found.length)
+				found = Arrays.copyOf(found, n * 2);
+			found[n++] = i;
+		}
+		Arrays.sort(found, 0, n);
+		
+		//distinct terms, with counts
+		int[] indices = new int[n];
+		double[] values = new double[n];
+		int d = 0;
+		for (int j = 0; j < n; j++) {
+			if(d > 0 && indices[d-1] == found[j])
+				values[d-1]++;
+			else
+			{
+				indices[d] = found[j];
+				values[d++] = 1;
+			}
+		}
+		return newInstance(indices, values, d, classValue, weight);
+	}
+	/**
+	 * Write the dictionary to the given path. The file is written to a temporary file first, and then moved in place.
+	 * @param path
+	 * @throws IOException
+	 */
+	public synchronized void save(Path path) throws IOException
+	{
+		Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+		try(DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp))))
+		{
+			write(out);
+		}
+		Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING);
+	}
+	private void write(DataOutputStream out) throws IOException
+	{
+		out.writeInt(MAGIC);
+		out.writeInt(VERSION);
+		out.writeInt(capacity);
+		Attribute classAttr = header.classAttribute();
+		out.writeUTF(classAttr.name());
+		out.writeInt(classAttr.numValues());
+		for (int i = 0; i < classAttr.numValues(); i++) {
+			out.writeUTF(classAttr.value(i));
+		}
+		int size = size();
+		out.writeInt(size);
+		for (int i = 0; i < size; i++) {
+			out.writeUTF(terms.get(i));
+		}
+	}
+	/**
+	 * Read a dictionary written by {@link #save(Path)}.
+	 * @param path
+	 * @return
+	 * @throws IOException
+	 */
+	public static TermDictionary load(Path path) throws IOException
+	{
+		try(InputStream is = new BufferedInputStream(Files.newInputStream(path)))
+		{
+			DataInputStream in = new DataInputStream(is);
+			if(in.readInt() != MAGIC || in.readInt() != VERSION)
+				throw new IOException("Not a vocabulary file: "+path);
+			int capacity = in.readInt();
+			String className = in.readUTF();
+			int nClasses = in.readInt();
+			List<String> classes = new ArrayList<>(nClasses);
+			for (int i = 0; i < nClasses; i++) {
+				classes.add(in.readUTF());
+			}
+			TermDictionary dict = new TermDictionary(capacity, new Attribute(className, classes));
+			int size = in.readInt();
+			for (int i = 0; i < size; i++) {
+				if(dict.indexOf(in.readUTF()) != i)
+					throw new IOException("Corrupt vocabulary file: "+path);
+			}
+			return dict;
+		}
+	}
+	@Override
+	public String toString() {
+		return "TermDictionary [size=" + size() + ", capacity=" + capacity + ", overflow=" + overflow + "]";
+	}
+}
@@ -0,0 +1,162 @@
+/**
+ * Copyright 2017 esutdal
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package reactivetechnologies.sentigrade.engine.weka.service;
+
+import java.util.ArrayList;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
+
+import weka.core.Attribute;
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.core.SparseInstance;
+import weka.core.Utils;
+import weka.core.tokenizers.Tokenizer;
+
+/**
+ * Converts texts to sparse numeric feature vectors, against a header of a fixed number of feature attributes followed
+ * by the class attribute.
+ * @author esutdal
+ *
+ */
+public abstract class TextVectorizer {
+
+	protected final int numFeatures;
+	protected final Instances header;
+	/**
+	 * 
+	 * @param relation name of the header
+	 * @param featurePrefix name prefix of the feature attributes
+	 * @param numFeatures number of feature attributes
+	 * @param classAttribute the nominal class attribute
+	 */
+	protected TextVectorizer(String relation, String featurePrefix, int numFeatures, Attribute classAttribute) {
+		this.numFeatures = numFeatures;
+		ArrayList<Attribute> attribs = new ArrayList<>(numFeatures + 1);
+		for (int i = 0; i < numFeatures; i++) {
+			attribs.add(new Attribute(featurePrefix + i));
+		}
+		attribs.add(classAttribute.copy(classAttribute.name()));
+		header = new Instances(relation, attribs, 0);
+		header.setClassIndex(numFeatures);
+	}
+	/**
+	 * The dataset header for the emitted instances.
+	 * @return
+	 */
+	public Instances getHeader() {
+		return header;
+	}
+	/**
+	 * Convert a text to a sparse instance against {@link #getHeader()}.
+	 * @param text
+	 * @param classValue class value index, or missing
+	 * @param weight
+	 * @param tokenizer
+	 * @return
+	 */
+	public abstract Instance vectorize(String text, double classValue, double weight, Tokenizer tokenizer);
+	
+	/**
+	 * Build a sparse instance from feature indices in ascending order, and their values. The class value is appended.
+	 * @param indices
+	 * @param values
+	 * @param n number of features
+	 * @param classValue
+	 * @param weight
+	 * @return
+	 */
+	protected Instance newInstance(int[] indices, double[] values, int n, double classValue, double weight)
+	{
+		int[] idx = new int[n + 1];
+		double[] val = new double[n + 1];
+		System.arraycopy(indices, 0, idx, 0, n);
+		System.arraycopy(values, 0, val, 0, n);
+		idx[n] = numFeatures;
+		val[n] = classValue;
+		Instance inst = new SparseInstance(weight, val, idx, numFeatures + 1);
+		inst.setDataset(header);
+		return inst;
+	}
+	
+	private static int textIndex(Instances raw)
+	{
+		for (int i = 0; i < raw.numAttributes(); i++) {
+			if(raw.attribute(i).isString())
+				return i;
+		}
+		throw new IllegalArgumentException("No string attribute found to vectorize");
+	}
+	private double classValue(Instance inst, Attribute rawClass)
+	{
+		if(!inst.isMissing(rawClass))
+		{
+			int c = header.classAttribute().indexOfValue(inst.stringValue(rawClass));
+			if(c >= 0)
+				return c;
+		}
+		return Utils.missingValue();
+	}
+	private static Attribute rawClass(Instances raw)
+	{
+		return raw.classIndex() >= 0 ? raw.classAttribute() : raw.attribute(raw.numAttributes() - 1);
+	}
+	/**
+	 * Convert a text dataset. The text is taken from the first string attribute, and the class from the class attribute, 
+	 * else the last attribute.
+	 * @param raw
+	 * @param tokenizer
+	 * @return
+	 */
+	public Instances vectorize(Instances raw, Tokenizer tokenizer)
+	{
+		int textIdx = textIndex(raw);
+		Attribute rawClass = rawClass(raw);
+		
+		Instances vectors = new Instances(header, raw.numInstances());
+		for(Instance inst : raw)
+		{
+			vectors.add(vectorize(inst.stringValue(textIdx), classValue(inst, rawClass), inst.weight(), tokenizer));
+		}
+		return vectors;
+	}
+	/**
+	 * Convert a text dataset in parallel, in the common fork join pool. Tokenizers are not thread safe, hence a 
+	 * tokenizer per thread is to be provided. 
+	 * @param raw
+	 * @param tokenizers
+	 * @return
+	 * @see #vectorize(Instances, Tokenizer)
+	 */
+	public Instances vectorize(final Instances raw, final ThreadLocal<? extends Tokenizer> tokenizers)
+	{
+		final int textIdx = textIndex(raw);
+		final Attribute rawClass = rawClass(raw);
+		final Instance[] converted = new Instance[raw.numInstances()];
+		IntStream.range(0, converted.length).parallel().forEach(new IntConsumer() {
+			
+			@Override
+			public void accept(int i) {
+				Instance inst = raw.instance(i);
+				converted[i] = vectorize(inst.stringValue(textIdx), classValue(inst, rawClass), inst.weight(), tokenizers.get());
+			}
+		});
+		Instances vectors = new Instances(header, converted.length);
+		for(Instance inst : converted)
+			vectors.add(inst);
+		return vectors;
+	}
+}
@@ -0,0 +1,153 @@
+/**
+ * Copyright 2017 esutdal
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package reactivetechnologies.sentigrade.engine.weka.service;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.FutureTask;
+/**
+ * A background training job on a non-incremental classifier. The job vectorizes the dataset, builds a new classifier
+ * on it, and swaps it into the engine on completion. Status and progress are readable while the job runs.
+ * @author esutdal
+ *
+ */
+public class TrainingJob extends FutureTask<Void> {
+
+	public static enum State {QUEUED, VECTORIZING, TRAINING, COMPLETED, SUPERSEDED, FAILED, CANCELLED}
+	
+	private final String id;
+	private final String domain;
+	private final long sequence;
+	private final long submittedAt = System.currentTimeMillis();
+	private volatile long startedAt, finishedAt;
+	private volatile State state = State.QUEUED;
+	private volatile int vectorized;
+	private volatile int total = -1;
+	private volatile int executionSlots = 1;
+	private volatile String message = "";
+	
+	TrainingJob(String id, String domain, long sequence, Callable<Void> task) {
+		super(task);
+		this.id = id;
+		this.domain = domain;
+		this.sequence = sequence;
+	}
+	/**
+	 * Cancel the job, unless the model is already swapped. A job that is training cannot be interrupted by all
+	 * algorithms; in that case the built model is discarded on completion.
+	 */
+	@Override
+	public synchronized boolean cancel(boolean mayInterruptIfRunning) {
+		if(state == State.COMPLETED || state == State.SUPERSEDED)
+			return false;
+		return super.cancel(mayInterruptIfRunning);
+	}
+	@Override
+	protected void done() {
+		if(isCancelled())
+		{
+			state = State.CANCELLED;
+			finishedAt = System.currentTimeMillis();
+		}
+	}
+	/**
+	 * Mark the state, unless cancelled.
+	 * @param s
+	 * @return false if cancelled
+	 */
+	synchronized boolean transition(State s)
+	{
+		if(isCancelled())
+			return false;
+		state = s;
+		if(s == State.VECTORIZING)
+			startedAt = System.currentTimeMillis();
+		else if(s != State.TRAINING)
+			finishedAt = System.currentTimeMillis();
+		return true;
+	}
+	void failed(String message)
+	{
+		this.message = message;
+		transition(State.FAILED);
+	}
+	void setVectorized(int vectorized) {
+		this.vectorized = vectorized;
+	}
+	void setTotal(int total) {
+		this.total = total;
+	}
+	void setExecutionSlots(int executionSlots) {
+		this.executionSlots = executionSlots;
+	}
+	void setMessage(String message) {
+		this.message = message;
+	}
+	long getSequence() {
+		return sequence;
+	}
+	public String getId() {
+		return id;
+	}
+	public String getDomain() {
+		return domain;
+	}
+	public State getState() {
+		return state;
+	}
+	/**
+	 * @return number of instances vectorized so far
+	 */
+	public int getVectorized() {
+		return vectorized;
+	}
+	/**
+	 * @return total number of instances, or -1 if not known (streaming)
+	 */
+	public int getTotal() {
+		return total;
+	}
+	public int getExecutionSlots() {
+		return executionSlots;
+	}
+	public String getMessage() {
+		return message;
+	}
+	public long getSubmittedAt() {
+		return submittedAt;
+	}
+	public long getStartedAt() {
+		return startedAt;
+	}
+	public long getFinishedAt() {
+		return finishedAt;
+	}
+	/**
+	 * @return millis spent running, till now if not finished
+	 */
+	public long getElapsedMillis() {
+		if(startedAt == 0)
+			return 0;
+		return (finishedAt > 0 ? finishedAt : System.currentTimeMillis()) - startedAt;
+	}
+	public boolean isFinished() {
+		return finishedAt > 0;
+	}
+	@Override
+	public String toString() {
+		return "TrainingJob [id=" + id + ", domain=" + domain + ", state=" + state + ", vectorized=" + vectorized
+				+ (total >= 0 ? " of " + total : "") + ", elapsedMillis=" + getElapsedMillis() + "]";
+	}
+}
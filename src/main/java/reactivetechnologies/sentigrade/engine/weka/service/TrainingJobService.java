@@ -0,0 +1,269 @@
+/**
+ * Copyright 2017 esutdal
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package reactivetechnologies.sentigrade.engine.weka.service;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import reactivetechnologies.sentigrade.dto.VectorRequestData;
+import reactivetechnologies.sentigrade.engine.nlp.SentimentAnalyzer.BuildInstancesDelegate.InstanceStream;
+import reactivetechnologies.sentigrade.engine.weka.AbstractClassificationModelEngine;
+import reactivetechnologies.sentigrade.engine.weka.service.TrainingJob.State;
+import reactivetechnologies.sentigrade.utils.ConfigUtil;
+import weka.classifiers.Classifier;
+import weka.core.Instances;
+/**
+ * Runs the training of non-incremental classifiers as background jobs. A job builds a new classifier instance 
+ * off the engine, using Weka execution slots where the algorithm supports it, and swaps it in on completion. 
+ * If jobs for a domain overlap, the model from the latest submitted one is retained.
+ * @author esutdal
+ *
+ */
+@Service
+public class TrainingJobService {
+
+	private static final Logger log = LoggerFactory.getLogger(TrainingJobService.class);
+	@Value("${weka.classifier.train.jobs.threads:1}")
+	private int jobThreads;
+	@Value("${weka.classifier.train.jobs.executionSlots:0}")
+	private int executionSlots;
+	@Value("${weka.classifier.train.jobs.retainMins:60}")
+	private long retainMins;
+	
+	private ExecutorService threads;
+	private final ConcurrentMap<String, TrainingJob> jobs = new ConcurrentHashMap<>();
+	private final AtomicLong sequence = new AtomicLong();
+	/*
+	 * Sequence of the last job swapped in, per domain.
+	 */
+	private final Map<String, Long> swapped = new ConcurrentHashMap<>();
+	
+	@PostConstruct
+	void init()
+	{
+		jobThreads = Math.max(1, jobThreads);
+		executionSlots = executionSlots > 0 ? executionSlots : Runtime.getRuntime().availableProcessors();
+		threads = Executors.newFixedThreadPool(jobThreads, new ThreadFactory() {
+			int n = 0;
+			@Override
+			public synchronized Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "TrainingJobThread-"+(n++));
+				t.setDaemon(true);
+				return t;
+			}
+		});
+		log.info("Training jobs will run on "+jobThreads+" threads, with "+executionSlots+" execution slots per job where supported");
+	}
+	@PreDestroy
+	void destroy()
+	{
+		threads.shutdownNow();
+	}
+	/**
+	 * Submit a training job for the engine.
+	 * @param engine
+	 * @param data
+	 * @return the job submitted
+	 */
+	public TrainingJob submit(AbstractClassificationModelEngine engine, VectorRequestData data)
+	{
+		purgeFinished();
+		final String domain = data.getDomain();
+		final JobTask task = new JobTask(engine, data);
+		TrainingJob job = new TrainingJob(UUID.randomUUID().toString(), domain, sequence.incrementAndGet(), task);
+		task.job = job;
+		if(!data.isStreaming())
+			job.setTotal(data.getDataSet().size());
+		jobs.put(job.getId(), job);
+		threads.execute(job);
+		log.info(domain+"| Submitted training job "+job.getId());
+		return job;
+	}
+	/**
+	 * 
+	 * @param id
+	 * @return the job, or null if not found
+	 */
+	public TrainingJob get(String id)
+	{
+		return jobs.get(id);
+	}
+	/**
+	 * Cancel the job, if not already completed.
+	 * @param id
+	 * @return the job, or null if not found
+	 */
+	public TrainingJob cancel(String id)
+	{
+		TrainingJob job = jobs.get(id);
+		if(job != null && job.cancel(true))
+			log.info(job.getDomain()+"| Cancelled training job "+id);
+		return job;
+	}
+	/**
+	 * List the jobs for a domain.
+	 * @param domain
+	 * @return
+	 */
+	public List<TrainingJob> list(String domain)
+	{
+		List<TrainingJob> list = new ArrayList<>();
+		for(TrainingJob job : jobs.values())
+		{
+			if(job.getDomain().equals(domain))
+				list.add(job);
+		}
+		return list;
+	}
+	private void purgeFinished()
+	{
+		long expiry = System.currentTimeMillis() - TimeUnit.MINUTES.toMillis(retainMins);
+		for (Iterator<TrainingJob> iter = jobs.values().iterator(); iter.hasNext();) 
+		{
+			TrainingJob job = iter.next();
+			if(job.isFinished() && job.getFinishedAt() < expiry)
+				iter.remove();
+		}
+	}
+	/**
+	 * Use parallel execution slots, if the algorithm supports it (for e.g. ensembles like RandomForest, Bagging).
+	 * @param c
+	 * @return slots set, or 1
+	 */
+	private int setExecutionSlots(Classifier c)
+	{
+		try 
+		{
+			Method m = c.getClass().getMethod("setNumExecutionSlots", int.class);
+			m.invoke(c, executionSlots);
+			return executionSlots;
+		} 
+		catch (NoSuchMethodException e) {
+			log.debug(c.getClass().getSimpleName()+" does not support execution slots");
+		} 
+		catch (Exception e) {
+			log.warn("Unable to set execution slots on "+c.getClass().getSimpleName(), e);
+		}
+		return 1;
+	}
+	/**
+	 * Swap the model in, unless the job is cancelled or a later submitted job is already swapped.
+	 * @param engine
+	 * @param job
+	 * @param c
+	 * @param data
+	 * @throws Exception
+	 */
+	private void swap(AbstractClassificationModelEngine engine, TrainingJob job, Classifier c, Instances data) throws Exception
+	{
+		synchronized (swapped) {
+			Long last = swapped.get(job.getDomain());
+			if(last != null && last > job.getSequence())
+			{
+				job.transition(State.SUPERSEDED);
+				log.warn(job.getDomain()+"| Discarded model of training job "+job.getId()+", as a later job has completed");
+				return;
+			}
+			synchronized (job) {
+				if(job.isCancelled())
+					return;
+				engine.swapClassifier(c, data);
+				job.transition(State.COMPLETED);
+			}
+			swapped.put(job.getDomain(), job.getSequence());
+		}
+	}
+	private class JobTask implements Callable<Void>
+	{
+		private final AbstractClassificationModelEngine engine;
+		private final VectorRequestData data;
+		private TrainingJob job;
+		JobTask(AbstractClassificationModelEngine engine, VectorRequestData data) {
+			this.engine = engine;
+			this.data = data;
+		}
+		private Instances vectorize()
+		{
+			Instances ins = data.getStructure();
+			InstanceStream instances = data.toInstanceStream();
+			int i = 0;
+			while(instances.hasNext())
+			{
+				if(Thread.currentThread().isInterrupted())
+					return null;
+				ins.add(instances.next());
+				job.setVectorized(++i);
+			}
+			log.info(job.getDomain()+"| Training job "+job.getId()+" vectorized dataset. "+instances);
+			return ins;
+		}
+		private void run() throws Exception
+		{
+			if(!job.transition(State.VECTORIZING))
+				return;
+			Instances ins = vectorize();
+			if(ins == null || !job.transition(State.TRAINING))
+				return;
+			
+			Classifier c = engine.newClassifierInstance();
+			job.setExecutionSlots(setExecutionSlots(c));
+			c.buildClassifier(ins);
+			
+			swap(engine, job, c, ins);
+		}
+		@Override
+		public Void call() throws Exception {
+			log.info(job.getDomain()+"| Starting training job "+job.getId()+" on a non-incremental classifier. This may take some time..");
+			try 
+			{
+				run();
+			} 
+			catch (Exception e) {
+				if(!job.isCancelled())
+				{
+					log.error(job.getDomain()+"| Training job "+job.getId()+" failed", e);
+					job.failed(e.getMessage());
+				}
+				//so that a waiting caller gets the failure
+				throw e;
+			}
+			finally {
+				log.info(job.getDomain()+"| End training job. "+job.getState()+" in "+ConfigUtil.toTimeElapsedString(job.getElapsedMillis())+". "+job);
+			}
+			return null;
+		}
+	}
+}
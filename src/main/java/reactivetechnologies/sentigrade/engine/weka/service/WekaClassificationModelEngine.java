@@ -29,15 +29,14 @@ SOFTWARE.
 package reactivetechnologies.sentigrade.engine.weka.service;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Enumeration;
 import java.util.List;
-import java.util.concurrent.ArrayBlockingQueue;
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.annotation.PostConstruct;
 import javax.annotation.PreDestroy;
@@ -52,18 +51,27 @@ import org.springframework.beans.factory.annotation.Value;
 import reactivetechnologies.sentigrade.dto.RegressionModel;
 import reactivetechnologies.sentigrade.engine.weka.AbstractClassificationModelEngine;
 import reactivetechnologies.sentigrade.engine.weka.EnsembleCombiner;
+import reactivetechnologies.sentigrade.engine.weka.ModelMerger;
 import reactivetechnologies.sentigrade.engine.weka.dto.WekaData;
 import reactivetechnologies.sentigrade.engine.weka.dto.WekaRegressionModel;
+import reactivetechnologies.sentigrade.engine.weka.service.EngineWorkerPool.Strand;
 import reactivetechnologies.sentigrade.engine.weka.service.WordVectorPreprocessor.ArgSwitch;
 import reactivetechnologies.sentigrade.err.EngineException;
+import reactivetechnologies.sentigrade.err.ModelMergeFailureException;
 import reactivetechnologies.sentigrade.err.OperationFailedUnexpectedly;
 import weka.classifiers.AbstractClassifier;
 import weka.classifiers.Classifier;
 import weka.classifiers.UpdateableClassifier;
+import weka.classifiers.bayes.NaiveBayes;
+import weka.classifiers.bayes.NaiveBayesMultinomial;
 import weka.classifiers.bayes.NaiveBayesUpdateable;
+import weka.classifiers.meta.Vote;
 import weka.core.Attribute;
 import weka.core.Instance;
 import weka.core.Instances;
+import weka.core.OptionHandler;
+import weka.core.tokenizers.NGramTokenizer;
+import weka.core.tokenizers.Tokenizer;
 
 /**
  * A extension of Weka updateable classifier.
@@ -88,18 +96,22 @@ public class WekaClassificationModelEngine extends AbstractClassificationModelEn
 	 */
 	
 	protected boolean onInitialization() {
-		thread = Executors.newSingleThreadExecutor(new ThreadFactory() {
+		strand = workerPool.strand(domain);
+		buildTask = new BuildClassifierTask();
+		long interval = publishInterval > 0 ? publishInterval : 1000;
+		idlePublisher = workerPool.getScheduler().scheduleWithFixedDelay(new Runnable() {
 			
 			@Override
-			public Thread newThread(Runnable r) {
-				Thread t = new Thread(r, "IncrClassifBuildThread-"+domain);
-				t.setDaemon(true);
-				return t;
+			public void run() {
+				strand.execute(new Runnable() {
+					
+					@Override
+					public void run() {
+						publishIfDue(true);
+					}
+				});
 			}
-		});
-		keepConsuming = true;
-		buildTask = new BuildClassifierTask();
-		thread.submit(buildTask);
+		}, interval, interval, TimeUnit.MILLISECONDS);
 		return false;
 	}
 	
@@ -110,6 +122,13 @@ public class WekaClassificationModelEngine extends AbstractClassificationModelEn
 
 	@Autowired
 	protected HazelcastOperations hzService;
+	@Autowired
+	protected EngineWorkerPool workerPool;
+	/*
+	 * The serial strand of this domain on the shared worker pool. Model updates run on it.
+	 */
+	protected Strand strand;
+	private ScheduledFuture<?> idlePublisher;
 	protected String domain = DEFAULT_CLASSIFIER_DOMAIN;
 	public String getDomain() {
 		return domain;
@@ -129,17 +148,52 @@ public class WekaClassificationModelEngine extends AbstractClassificationModelEn
 	private boolean lucene;
 	@Value("${weka.classifier.request.backlog:1000}")
 	private int queueBacklog;
+	@Value("${weka.classifier.build.batchSize:32}")
+	private int buildBatchSize;
+	@Value("${weka.classifier.build.shards:1}")
+	private int shardCount;
 	@Value("${weka.classifier.flushSync.enable:false}")
 	private boolean flush;
-	@Value("${weka.classifier.flushSync.sleepMillis:10}")
-	private long flushSleep;
-	@Value("${weka.classifier.flushSync.sleepLoop:100}")
-	private int flushSleepMax;
+	@Value("${weka.classifier.flushSync.timeoutMillis:10000}")
+	private long flushTimeout;
+	@Value("${weka.classifier.publish.intervalMillis:1000}")
+	private long publishInterval;
+	@Value("${weka.classifier.vocabulary.enable:false}")
+	private boolean vocabularyEnabled;
+	@Value("${weka.classifier.vocabulary.capacity:20000}")
+	private int vocabularyCapacity;
+	@Value("${weka.classifier.hashing.enable:false}")
+	private boolean hashingEnabled;
+	@Value("${weka.classifier.hashing.buckets:65536}")
+	private int hashBuckets;
+	@Value("${weka.classifier.hashing.signed:true}")
+	private boolean signedHashing;
+	/*
+	 * The term dictionary for bag of words training, shared across batches. Created on first filtered batch, 
+	 * or restored by subclasses.
+	 */
+	protected volatile TermDictionary vocabulary;
+	private final Object vocabularyLock = new Object();
 	
 	protected Classifier clazzifier;
 	protected volatile long lastBuildAt = 0;
+	/*
+	 * A copy of the classifier, republished at most once in publishInterval. If the classifier is known to be safe for 
+	 * concurrent reads, the build thread publishes it eagerly, and readers score against it without acquiring any lock.
+	 * Else (for e.g LWL, which rebuilds its state on every prediction, and whose copy grows with the data seen) it is 
+	 * published lazily by the first read due after an update, and readers lock on the copy; so that training does not 
+	 * pay for copies which are not read. The version counters are guarded by 'this'.
+	 */
+	private volatile Classifier published;
+	private long modelVersion = 0, publishedVersion = 0;
+	private long lastPublishAt = 0;
+	//readers check for a lazy publication only after this time
+	private volatile long nextLazyPublishAt = 0;
+	private Classifier latestCopy, latestSnapshotCopy;
+	private long latestCopyVersion = -1, latestSnapshotCopyVersion = -1;
+	private final AtomicLong snapshots = new AtomicLong(), snapshotsReused = new AtomicLong(), copies = new AtomicLong(), copyNanos = new AtomicLong();
+	private volatile long lastCopyNanos, maxCopyNanos;
 
-	private ExecutorService thread;
 	/**
 	 * Name of the classifier algorithm used. By default returns the
 	 * Weka classifier class name.
@@ -153,7 +207,9 @@ public class WekaClassificationModelEngine extends AbstractClassificationModelEn
 	@PostConstruct
 	void initialize() 
 	{
-		instanceQ = new ArrayBlockingQueue<>(queueBacklog);
+		instanceQ = new IngestionRingBuffer<>(queueBacklog);
+		buildBatchSize = Math.max(1, buildBatchSize);
+		shardCount = shardCount > 0 ? shardCount : Runtime.getRuntime().availableProcessors();
 		onInitialization();
 		if (log.isDebugEnabled()) {
 			log.info(domain+"| ** Weka Classifier loaded [" + clazzifier.getClass()+ "] **");
@@ -164,7 +220,6 @@ public class WekaClassificationModelEngine extends AbstractClassificationModelEn
 
 	}
 
-	protected volatile boolean keepConsuming;
 	private BuildClassifierTask buildTask;
 	/**
 	 * 
@@ -180,156 +235,553 @@ public class WekaClassificationModelEngine extends AbstractClassificationModelEn
 		
 	}
 	
-	/**
-	 * Force a build with all queued instances. The async thread
-	 * will be paused while the flush is in progress. <p><b>Warning:</b> There are a couple of things to note here, 
-	 * flush might be missed most of the time, if queue remains empty; and again if flush is acquired
-	 * when a continuous ingestion is happening, it might fall into an unbreakable loop. So use it with caution!
-	 * @return 
+	/*
+	 * Flush barrier. The ring buffer sequence up to which datasets have been applied to the classifier, 
+	 * advanced by the build thread once per batch. Snapshot threads wait on 'applied' till it reaches
+	 * the sequence claimed at the time of request.
 	 */
-	private boolean flush()
+	private final Object applied = new Object();
+	private volatile long appliedSequence = 0;
+	private volatile int barrierWaiters = 0;
+	
+	private void advanceApplied(long sequence)
 	{
-		boolean keepReading = true;
-		boolean intr = false;
-		int retry = 0;
-		while(!(keepReading = buildTask.pause()) && retry++<flushSleepMax){
-			try {
-				Thread.sleep(flushSleep);
-			} catch (InterruptedException e) {
-				intr = true;
+		appliedSequence = sequence;
+		if(barrierWaiters > 0)
+		{
+			synchronized (applied) {
+				applied.notifyAll();
 			}
 		}
-		if(intr)
-			Thread.currentThread().interrupt();
-		if (keepReading) 
+	}
+	/**
+	 * Wait till all the datasets enqueued before this invocation have been applied to the classifier. Ingestion is not 
+	 * paused, and datasets enqueued after the invocation are not waited for. So this will complete even under 
+	 * continuous ingestion.
+	 * @param timeoutMillis
+	 * @return false if timed out, or interrupted
+	 */
+	private boolean awaitApplied(long timeoutMillis)
+	{
+		long target = instanceQ.claimed();
+		if(appliedSequence >= target)
+			return true;
+		long deadline = System.currentTimeMillis() + timeoutMillis;
+		synchronized (applied) 
 		{
+			barrierWaiters++;
 			try 
 			{
-				while (keepReading) 
+				while (appliedSequence < target) 
 				{
-					try 
-					{
-						Instances ins = instanceQ.poll();
-						if (ins == null || ins instanceof Poison)
-							keepReading = false;
-						else
-							buildClassifier(ins);
-
-					} catch (Exception e) {
-						log.error("", e);
-					}
+					long remaining = deadline - System.currentTimeMillis();
+					if(remaining <= 0)
+						return false;
+					applied.wait(remaining);
 				}
-				
 				return true;
 			} 
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return false;
+			}
 			finally {
-				buildTask.resume();
-			} 
+				barrierWaiters--;
+			}
 		}
-		else
-			log.warn("Giving up! Flush was skipped since unable to acquire mutex on build thread");
-		
-		return false;
 	}
 
+	/*
+	 * Drains the ring buffer in batches, on the domain strand. Producers schedule it on enqueue, unless already scheduled. 
+	 * It reschedules itself if more is pending after a batch, so that other domains get the worker in between.
+	 */
 	private final class BuildClassifierTask implements Runnable {
-		private final AtomicBoolean acquiredMutex = new AtomicBoolean();
 		
-		private void onBuild() throws Exception
+		private final List<Instances> batch = new ArrayList<>(buildBatchSize);
+		private final AtomicBoolean scheduled = new AtomicBoolean();
+		
+		private void schedule()
+		{
+			if(!scheduled.get() && scheduled.compareAndSet(false, true))
+				strand.execute(this);
+		}
+		
+		@Override
+		public void run() 
 		{
+			//clear before draining, so that a concurrent enqueue would either be drained, or reschedule
+			scheduled.set(false);
+			if(shardsInFlight)
+				return;//the last shard to complete will reschedule
 			try 
 			{
-				Instances ins = instanceQ.take();
-				if (ins instanceof Poison)
-					keepConsuming = false;
-				else
-					buildClassifier(ins);
+				if (instanceQ.drainTo(batch, buildBatchSize) > 0) {
+					if(applySharded(batch))
+						return;
+					applyBatch(batch);
+					advanceApplied(instanceQ.consumed());
+					publishIfDue(false);
+				}
 			} 
+			catch (Exception e) {
+				log.error(domain+"| Error caught in build task", e);
+			}
 			finally {
-				acquiredMutex.compareAndSet(true, false);
+				batch.clear();
 			}
+			if(!instanceQ.isEmpty())
+				schedule();
 		}
-		
-		private void onPause() throws InterruptedException
-		{
-			log.warn("Try pause build on signal");
-			synchronized (acquiredMutex) {
-				if(!acquiredMutex.compareAndSet(false, true))
-				{
-					log.info("Pausing build task..");
-					acquiredMutex.wait();
-					log.info("Resumed build task..");
+	}
+
+	/*
+	 * Sharded mode. Replicas of the updateable classifier are trained in parallel, each on its own strand, with the instances
+	 * of a batch partitioned round robin. All replicas start from the same prior, so that they can be merged on snapshot.
+	 * Guarded by 'this'; each replica is updated holding the lock on itself.
+	 */
+	private volatile Classifier[] replicas;
+	private Classifier prior;
+	private Strand[] shardStrands;
+	private final AtomicInteger nextShard = new AtomicInteger();
+	/*
+	 * A single batch is applied across the shards at a time, so that the flush barrier advances in order. The replicas
+	 * are not replaced while a batch is in flight, or a single replica is being updated outside a batch, else the instances
+	 * would be lost while still counted as applied.
+	 * Guarded by 'shardGate'; which is never acquired holding the lock on 'this'.
+	 */
+	private final Object shardGate = new Object();
+	private volatile boolean shardsInFlight;
+	private int shardReplacers = 0;
+	//updates of a single replica outside a sharded batch, for e.g per instance training
+	private int shardUpdaters = 0;
+	/**
+	 * Wait till the batch in flight across the shards (if any) completes, and hold off further ones till 
+	 * {@link #shardsResumed()}. To be invoked before replacing the classifier, not holding the lock on 'this'.
+	 */
+	private void awaitShardsIdle()
+	{
+		boolean interrupted = false;
+		synchronized (shardGate) {
+			shardReplacers++;
+			while(shardsInFlight || shardUpdaters > 0)
+			{
+				try {
+					shardGate.wait();
+				} catch (InterruptedException e) {
+					interrupted = true;
 				}
 			}
 		}
-		private void build()
+		if(interrupted)
+			Thread.currentThread().interrupt();
+	}
+	/**
+	 * Enter an update of a single replica, outside a sharded batch. Waits for a replacement of the classifier in progress,
+	 * and holds off the next one till {@link #exitShardUpdate()}. 
+	 * @return the replicas, or null if not sharded; in which case the gate is not held
+	 * @throws Exception
+	 */
+	private Classifier[] enterShardUpdate() throws Exception
+	{
+		if(shardCount <= 1)
+			return null;
+		boolean interrupted = false;
+		try 
 		{
-			try 
+			synchronized (shardGate) 
 			{
-				if(acquiredMutex.compareAndSet(false, true))
+				while(shardReplacers > 0)
 				{
-					onBuild();
+					try {
+						shardGate.wait();
+					} catch (InterruptedException e) {
+						interrupted = true;
+					}
 				}
-				else
+				Classifier[] shards = shards();
+				if(shards != null)
+					shardUpdaters++;
+				return shards;
+			}
+		} 
+		finally {
+			if(interrupted)
+				Thread.currentThread().interrupt();
+		}
+	}
+	private void exitShardUpdate()
+	{
+		synchronized (shardGate) {
+			shardUpdaters--;
+			shardGate.notifyAll();
+		}
+	}
+	private void shardsResumed()
+	{
+		synchronized (shardGate) {
+			shardReplacers--;
+			shardGate.notifyAll();
+		}
+	}
+	/**
+	 * The shard replicas, created on first use.
+	 * @return null if not sharded
+	 * @throws Exception
+	 */
+	private Classifier[] shards() throws Exception
+	{
+		Classifier[] r = replicas;
+		if(r != null || shardCount <= 1)
+			return r;
+		synchronized (this) {
+			if(replicas == null && attribsInitialized && isUpdateable())
+				initShards();
+			return replicas;
+		}
+	}
+	/*
+	 * To be invoked holding the lock on 'this'.
+	 */
+	private void initShards() throws Exception
+	{
+		prior = newClassifierInstance();
+		prior.buildClassifier(structure);
+		Classifier[] r = new Classifier[shardCount];
+		Strand[] strands = new Strand[shardCount];
+		//the first replica carries over anything learned so far
+		r[0] = AbstractClassifier.makeCopy(clazzifier);
+		strands[0] = workerPool.strand(domain+"#0");
+		for (int i = 1; i < r.length; i++) {
+			r[i] = AbstractClassifier.makeCopy(prior);
+			strands[i] = workerPool.strand(domain+"#"+i);
+		}
+		shardStrands = strands;
+		replicas = r;
+		log.info(domain+"| Training on "+shardCount+" shards. Snapshots will be "+(ModelMerger.isMergeable(prior) ? "an exact merge" : "a vote")+" of the shards");
+	}
+	/*
+	 * Partition the batch across the shards, and apply in parallel. The last shard to complete advances the flush barrier.
+	 * Returns false if not sharded.
+	 */
+	private boolean applySharded(List<Instances> batch) throws Exception
+	{
+		if(shardCount <= 1)
+			return false;
+		boolean interrupted = false;
+		try 
+		{
+			synchronized (shardGate) 
+			{
+				//let a classifier replacement complete, so that the batch is applied to the new replicas
+				while(shardReplacers > 0)
 				{
-					onPause();
-					
+					try {
+						shardGate.wait();
+					} catch (InterruptedException e) {
+						interrupted = true;
+					}
 				}
-				
-			} catch (InterruptedException e) {
-				Thread.currentThread().interrupt();
-			} catch (Exception e) {
-				log.error("Error caught in build thread", e);
+				Classifier[] shards = shards();
+				if(shards == null)
+					return false;
+				shardsInFlight = true;
+				dispatch(shards, batch);
+				return true;
 			}
+		} 
+		finally {
+			if(interrupted)
+				Thread.currentThread().interrupt();
 		}
-		private boolean pause()
+	}
+	private void dispatch(Classifier[] shards, List<Instances> batch)
+	{
+		List<List<Instance>> parts = new ArrayList<>(shards.length);
+		for (int i = 0; i < shards.length; i++) {
+			parts.add(new ArrayList<Instance>());
+		}
+		int k = 0;
+		for(Instances data : batch)
 		{
-			//busy spin!
-			return acquiredMutex.compareAndSet(false, true);
+			for (Enumeration<Instance> e = data.enumerateInstances(); e.hasMoreElements();) {
+				parts.get(k++ % shards.length).add(e.nextElement());
+			}
 		}
-		private void resume()
+		ShardedBatch sharded = new ShardedBatch(shards.length, instanceQ.consumed(), batch.size());
+		for (int i = 0; i < shards.length; i++) {
+			shardStrands[i].execute(new ShardTask(shards[i], parts.get(i), sharded));
+		}
+	}
+	/**
+	 * Completion of a batch applied across the shards.
+	 */
+	private final class ShardedBatch
+	{
+		private final AtomicInteger remaining;
+		private final AtomicInteger applied = new AtomicInteger();
+		private final long sequence;
+		private final int datasets;
+		ShardedBatch(int shards, long sequence, int datasets) {
+			remaining = new AtomicInteger(shards);
+			this.sequence = sequence;
+			this.datasets = datasets;
+		}
+		void shardDone(int n)
 		{
-			synchronized (acquiredMutex) {
-				if(acquiredMutex.compareAndSet(true, false))
-					acquiredMutex.notify();
+			applied.addAndGet(n);
+			if(remaining.decrementAndGet() > 0)
+				return;
+			int total = applied.get();
+			synchronized (WekaClassificationModelEngine.this) {
+				modelVersion += total;
+			}
+			lastBuildAt = System.currentTimeMillis();
+			if(!modelUpdated.get())
+				modelUpdated.set(true);
+			log.info(domain+"| Classifier shards updated with "+total+" instances from "+datasets+" dataset(s)");
+			advanceApplied(sequence);
+			publishIfDue(false);
+			synchronized (shardGate) {
+				shardsInFlight = false;
+				shardGate.notifyAll();
 			}
+			if(!instanceQ.isEmpty())
+				buildTask.schedule();
+		}
+	}
+	private final class ShardTask implements Runnable
+	{
+		private final Classifier replica;
+		private final List<Instance> part;
+		private final ShardedBatch batch;
+		ShardTask(Classifier replica, List<Instance> part, ShardedBatch batch) {
+			this.replica = replica;
+			this.part = part;
+			this.batch = batch;
 		}
-		
 		@Override
-		public void run() 
-		{
-			log.info(domain+"| Starting classifier update worker");
-			while (keepConsuming) 
+		public void run() {
+			int n = 0;
+			try 
 			{
-				build();
+				synchronized (replica) {
+					for(Instance i : part)
+					{
+						try 
+						{
+							i.setDataset(structure);
+							((UpdateableClassifier) replica).updateClassifier(i);
+							n++;
+						} catch (Exception e) {
+							log.error(domain+"| Skipping instance on error", e);
+						}
+					}
+				}
+			} 
+			finally {
+				batch.shardDone(n);
 			}
-			log.debug(domain+"| Stopped classifier executor thread");
 		}
 	}
-
-	private static class Poison extends Instances
+	/**
+	 * A copy of the model for readers and snapshots. If sharded, this is a merge of the shard replicas; exact if the
+	 * algorithm statistics can be added up, else a vote. To be invoked holding the lock on 'this'.
+	 * @return
+	 * @throws Exception
+	 */
+	private Classifier copyOfModel() throws Exception
 	{
-
-		/**
-		 * 
-		 */
-		private static final long serialVersionUID = 1L;
-
-		public Poison(String name, ArrayList<Attribute> attInfo, int capacity) {
-			super(name, attInfo, capacity);
+		Classifier[] r = replicas;
+		if(r == null)
+			return AbstractClassifier.makeCopy(clazzifier);
+		if(ModelMerger.isMergeable(prior))
+		{
+			Classifier merged;
+			synchronized (r[0]) {
+				merged = AbstractClassifier.makeCopy(r[0]);
+			}
+			for (int i = 1; i < r.length; i++) {
+				synchronized (r[i]) {
+					ModelMerger.addStatistics(merged, r[i], prior);
+				}
+			}
+			return merged;
+		}
+		Classifier[] copies = new Classifier[r.length];
+		for (int i = 0; i < r.length; i++) {
+			synchronized (r[i]) {
+				copies[i] = AbstractClassifier.makeCopy(r[i]);
+			}
 		}
+		return EnsembleCombiner.VOTING.getEnsembleClassifier(copies, null, null);
+	}
 
-		private Poison() {
-			this("poison", new ArrayList<>(), 0);
+	/**
+	 * Publish a copy of the classifier for readers, if it has been updated since the last publication. 
+	 * Unless forced, this is a no-op if the last publication happened less than publishInterval ago.
+	 * @param force
+	 */
+	private void publishIfDue(boolean force)
+	{
+		synchronized (this) {
+			long now = System.currentTimeMillis();
+			if(modelVersion == publishedVersion || (!force && now - lastPublishAt < publishInterval))
+				return;
+			if(!isReadSafe(clazzifier))
+			{
+				//published by the next read, see readerCopy()
+				if(force)
+					nextLazyPublishAt = 0;
+				return;
+			}
+			try 
+			{
+				publish(now);
+			} 
+			catch (Exception e) {
+				log.warn(domain+"| Unable to publish a copy of the classifier", e);
+			}
 		}
-		
+	}
+	/*
+	 * To be invoked holding the lock on 'this'.
+	 */
+	private void publish(long now) throws Exception
+	{
+		published = copyOfCurrentVersion(false);
+		publishedVersion = modelVersion;
+		lastPublishAt = now;
+		nextLazyPublishAt = now + publishInterval;
+		log.debug(domain+"| Published classifier version "+publishedVersion);
+	}
+	/**
+	 * The copy of the classifier for readers. A classifier not safe for concurrent reads is published here, on the first
+	 * read after an update, at most once in publishInterval.
+	 * @return null if a copy could not be published
+	 */
+	private Classifier readerCopy()
+	{
+		Classifier c = published;
+		if(c != null && (isReadSafe(c) || System.currentTimeMillis() < nextLazyPublishAt))
+			return c;
+		synchronized (this) {
+			long now = System.currentTimeMillis();
+			if(published != null && modelVersion == publishedVersion)
+			{
+				//an update after this is published by the idle tick, or a read after the interval
+				nextLazyPublishAt = now + publishInterval;
+				return published;
+			}
+			if(published != null && now - lastPublishAt < publishInterval)
+			{
+				nextLazyPublishAt = lastPublishAt + publishInterval;
+				return published;
+			}
+			try 
+			{
+				publish(now);
+			} 
+			catch (Exception e) {
+				log.warn(domain+"| Unable to publish a copy of the classifier", e);
+			}
+			return published;
+		}
+	}
+	/**
+	 * A deep copy of the classifier at the current model version, reused till the classifier is updated again. If the 
+	 * classifier is safe for concurrent reads, the copy is not modified by readers, hence the same copy is shared by the 
+	 * readers and the snapshots. Else snapshots get a copy of their own, so that a snapshot being marshalled is not 
+	 * modified by a concurrent prediction. To be invoked holding the lock on 'this'.
+	 * @param snapshot whether invoked for a model snapshot
+	 * @return
+	 * @throws Exception
+	 */
+	private Classifier copyOfCurrentVersion(boolean snapshot) throws Exception
+	{
+		if(snapshot)
+			snapshots.incrementAndGet();
+		boolean shared = !snapshot || latestCopy == null || isReadSafe(latestCopy);
+		Classifier c = shared ? latestCopy : latestSnapshotCopy;
+		long version = shared ? latestCopyVersion : latestSnapshotCopyVersion;
+		if(c != null && version == modelVersion)
+		{
+			if(snapshot)
+				snapshotsReused.incrementAndGet();
+			return c;
+		}
+		long start = System.nanoTime();
+		c = copyOfModel();
+		long nanos = System.nanoTime() - start;
+		if(shared && (!snapshot || isReadSafe(c)))
+		{
+			latestCopy = c;
+			latestCopyVersion = modelVersion;
+		}
+		else
+		{
+			latestSnapshotCopy = c;
+			latestSnapshotCopyVersion = modelVersion;
+		}
+		copies.incrementAndGet();
+		copyNanos.addAndGet(nanos);
+		lastCopyNanos = nanos;
+		if(nanos > maxCopyNanos)
+			maxCopyNanos = nanos;
+		return c;
+	}
+	/**
+	 * Snapshot cost for this domain. A snapshot is served by a deep copy only if the classifier has been updated since the
+	 * last copy; the time to copy is spent holding the lock, during which the build thread cannot update.
+	 * @return
+	 */
+	public String getSnapshotStats()
+	{
+		long n = copies.get();
+		long total = TimeUnit.NANOSECONDS.toMillis(copyNanos.get());
+		return "snapshots=" + snapshots.get() + ", reused=" + snapshotsReused.get() + ", copies=" + n + ", copyTime(total/avg/last/max ms)="
+				+ total + "/" + (n > 0 ? total / n : 0) + "/" + TimeUnit.NANOSECONDS.toMillis(lastCopyNanos) + "/"
+				+ TimeUnit.NANOSECONDS.toMillis(maxCopyNanos);
+	}
+	/**
+	 * Pending datasets and strand queue depth for this domain.
+	 * @return
+	 */
+	public String getQueueStats()
+	{
+		StringBuilder s = new StringBuilder("pendingDatasets=").append(instanceQ.size()).append(", ").append(strand);
+		Strand[] strands = replicas != null ? shardStrands : null;
+		if(strands != null)
+		{
+			for(Strand shard : strands)
+				s.append("; ").append(shard.getName()).append(" ").append(shard);
+		}
+		return s.toString();
+	}
+	/**
+	 * To be invoked by subclasses on replacing the classifier instance, so that readers get the new version.
+	 */
+	protected void classifierReplaced()
+	{
+		awaitShardsIdle();
+		try 
+		{
+			synchronized (this) {
+				//shards are recreated from the new instance
+				replicas = null;
+				modelVersion++;
+			}
+		} 
+		finally {
+			shardsResumed();
+		}
+		publishIfDue(true);
 	}
 	@PreDestroy
 	void destroy() {
 		onDestruction();
-		instanceQ.offer(new Poison());
-		thread.shutdown();
-		
+		idlePublisher.cancel(false);
+		//apply any pending datasets
+		buildTask.schedule();
 	}
 	/**
 	 * To be invoked on destroy. Subclasses to override.
@@ -345,20 +797,63 @@ public class WekaClassificationModelEngine extends AbstractClassificationModelEn
 	 */
 	protected Instances filterInstances(WekaData data) throws Exception {
 		if (data.isEnableFilter()) {
+			if (vocabularyEnabled && !hashingEnabled) {
+				return vectorize(data.getInstances());
+			}
 			ArgSwitch args = new ArgSwitch();
 			args.setUseLucene(lucene);
+			args.setUseHashing(hashingEnabled);
+			args.setHashBuckets(hashBuckets);
+			args.setSignedHashing(signedHashing && !isCountBased(clazzifier));
 			args.setUseNominalAttrib(clazzifier instanceof NaiveBayesUpdateable);
 			return WordVectorPreprocessor.process(data.getInstances(), args);
 		}
 		return data.getInstances();
 	}
+	/**
+	 * Get the domain vocabulary, creating it if not present.
+	 * @param raw the text dataset to pick the class attribute from
+	 * @return
+	 */
+	protected TermDictionary vocabularyFor(Instances raw)
+	{
+		TermDictionary v = vocabulary;
+		if(v == null)
+		{
+			synchronized (vocabularyLock) {
+				v = vocabulary;
+				if(v == null)
+				{
+					Attribute classAttr = raw.classIndex() >= 0 ? raw.classAttribute() : raw.attribute(raw.numAttributes() - 1);
+					v = vocabulary = new TermDictionary(vocabularyCapacity, classAttr);
+					log.info(domain+"| Created vocabulary of capacity "+vocabularyCapacity);
+				}
+			}
+		}
+		return v;
+	}
+	/*
+	 * Sparse term frequency vectors against the domain vocabulary.
+	 */
+	private Instances vectorize(Instances raw)
+	{
+		Tokenizer tokenizer = lucene ? new LuceneWordTokenizer() : new NGramTokenizer();
+		try 
+		{
+			return vocabularyFor(raw).vectorize(raw, tokenizer);
+		} 
+		finally {
+			if(tokenizer instanceof LuceneWordTokenizer)
+				((LuceneWordTokenizer) tokenizer).close();
+		}
+	}
 	protected boolean attribsInitialized;
 	/**
 	 * 
 	 */
 	private static final long serialVersionUID = 1L;
 
-	private BlockingQueue<Instances> instanceQ;
+	private IngestionRingBuffer<Instances> instanceQ;
 	protected Instances structure;
 	void setStructure(Instances data)
 	{
@@ -372,34 +867,127 @@ public class WekaClassificationModelEngine extends AbstractClassificationModelEn
 			setStructure(data);
 			if (isUpdateable()) {
 				clazzifier.buildClassifier(structure);
+				modelVersion++;
 			}
 			attribsInitialized = true;
 			log.info(domain + "| Classifier attributes initialized");
 		}
 	}
-	private void updateClassifier(Instances data) throws Exception
+	/**
+	 * Build with a batch of datasets drained from the ring buffer.
+	 * @param batch
+	 */
+	private void applyBatch(List<Instances> batch)
 	{
-		//setStructure(data);//not needed 
-		for (Enumeration<Instance> e = data.enumerateInstances(); e.hasMoreElements();) {
-			Instance i = e.nextElement();
-			updateWithInstance(i, false);
+		try {
+			buildBatch(batch);
+		} catch (Exception e) {
+			log.error(domain+"| Error while building classifier", e);
+		}
+	}
+	/*
+	 * All the datasets of the batch are applied under a single lock, and the build metadata
+	 * (version, timestamp) is published once per batch.
+	 */
+	private void buildBatch(List<Instances> batch) throws Exception
+	{
+		if(!attribsInitialized)
+		{
+			initAttribs(batch.get(0));
+		}
+		if (!isUpdateable()) 
+		{
+			for(Instances data : batch)
+				buildClassifier(data);
+			return;
+		}
+		int n = 0;
+		Classifier[] shards = enterShardUpdate();
+		if(shards != null)
+		{
+			try 
+			{
+				Classifier replica = shards[(nextShard.getAndIncrement() & Integer.MAX_VALUE) % shards.length];
+				synchronized (replica) {
+					n = updateWith(replica, batch);
+				}
+				synchronized (this) {
+					modelVersion += n;
+				}
+			} 
+			finally {
+				exitShardUpdate();
+			}
+		}
+		else
+		{
+			synchronized (this) 
+			{
+				n = updateWith(clazzifier, batch);
+				modelVersion += n;
+			}
 		}
 		//this is a volatile variable. updating only once to reduce cost of cpu cache flushes.
 		lastBuildAt = System.currentTimeMillis();
-		log.info(domain+"| Classifier model updated. Attrib count: "+structure.numAttributes());
+		if(!modelUpdated.get())
+			modelUpdated.set(true);
+		log.info(domain+"| Classifier model updated with "+n+" instances from "+batch.size()+" dataset(s). Attrib count: "+structure.numAttributes());
+	}
+	private int updateWith(Classifier c, List<Instances> batch)
+	{
+		int n = 0;
+		for(Instances data : batch)
+		{
+			try 
+			{
+				for (Enumeration<Instance> e = data.enumerateInstances(); e.hasMoreElements();) {
+					Instance i = e.nextElement();
+					i.setDataset(structure);
+					((UpdateableClassifier) c).updateClassifier(i);
+					n++;
+				}
+			} catch (Exception e) {
+				log.error(domain+"| Skipping rest of the dataset of size "+data.numInstances()+" on error", e);
+			}
+		}
+		return n;
 	}
 	/**
 	 * This might be invoked concurrently.
 	 * @param i
 	 * @throws Exception
 	 */
-	private synchronized void updateWithInstance(Instance i, boolean updateTimestamp) throws Exception
+	private void updateWithInstance(Instance i, boolean updateTimestamp) throws Exception
 	{
-		i.setDataset(structure);
-		((UpdateableClassifier) clazzifier).updateClassifier(i);
+		Classifier[] shards = enterShardUpdate();
+		if(shards != null)
+		{
+			try 
+			{
+				Classifier replica = shards[(nextShard.getAndIncrement() & Integer.MAX_VALUE) % shards.length];
+				synchronized (replica) {
+					i.setDataset(structure);
+					((UpdateableClassifier) replica).updateClassifier(i);
+				}
+				synchronized (this) {
+					modelVersion++;
+				}
+			} 
+			finally {
+				exitShardUpdate();
+			}
+		}
+		else
+		{
+			synchronized (this) {
+				i.setDataset(structure);
+				((UpdateableClassifier) clazzifier).updateClassifier(i);
+				modelVersion++;
+			}
+		}
 		if(updateTimestamp)
 			lastBuildAt = System.currentTimeMillis();
-		if(modelUpdated.compareAndSet(false, true)){
+		if(!modelUpdated.get() && modelUpdated.compareAndSet(false, true)){
 			log.info(domain+"| Classifier model updated with instance ..");
 		}
 	}
@@ -412,21 +1000,94 @@ public class WekaClassificationModelEngine extends AbstractClassificationModelEn
 		}
 		if (isUpdateable()) 
 		{
-			updateClassifier(data);
+			buildBatch(Collections.singletonList(data));
 		} 
 		else
 		{
 			log.warn(domain+"| '" + classifierAlgorithm()
 					+ "' is not an incremental algorithm. Expecting a complete dataset for training. Any previous model built will be overriden");
-			clazzifier.buildClassifier(data);
-			if(modelUpdated.compareAndSet(false, true)){
-				lastBuildAt = System.currentTimeMillis();
-			}
-			log.info(domain+"| Classifier model built. Attrib count: "+structure.numAttributes());
+			//build outside the lock, so that snapshots are not held up for the duration of training
+			Classifier c = newClassifierInstance();
+			c.buildClassifier(data);
+			swapClassifier(c, data);
 		}
 
 	}
+	@Override
+	public Classifier newClassifierInstance() throws Exception {
+		Classifier c;
+		synchronized (this) {
+			c = clazzifier;
+		}
+		if(c instanceof OptionHandler)
+			return AbstractClassifier.forName(c.getClass().getName(), ((OptionHandler) c).getOptions());
+		return AbstractClassifier.makeCopy(c);
+	}
+	@Override
+	public void swapClassifier(Classifier trained, Instances data) throws Exception {
+		if(!attribsInitialized)
+		{
+			initAttribs(data);
+		}
+		awaitShardsIdle();
+		try 
+		{
+			synchronized (this) {
+				clazzifier = trained;
+				replicas = null;
+				modelVersion++;
+			}
+		} 
+		finally {
+			shardsResumed();
+		}
+		if(modelUpdated.compareAndSet(false, true)){
+			lastBuildAt = System.currentTimeMillis();
+		}
+		publishIfDue(true);
+		log.info(domain+"| Classifier model replaced. Attrib count: "+structure.numAttributes());
+	}
 
+	/**
+	 * If the classifier does not modify its state while predicting, and hence can be shared by concurrent readers. 
+	 * Only the algorithms known to be so are considered safe.
+	 * @param c
+	 * @return
+	 */
+	static boolean isReadSafe(Classifier c)
+	{
+		if(c instanceof NaiveBayes || c instanceof NaiveBayesMultinomial)
+			return true;
+		if(c instanceof Vote)
+		{
+			for(Classifier member : ((Vote) c).getClassifiers())
+			{
+				if(!isReadSafe(member))
+					return false;
+			}
+			return true;
+		}
+		return false;
+	}
+	/**
+	 * If the classifier models word counts, and hence rejects negative attribute values.
+	 * @param c
+	 * @return
+	 */
+	static boolean isCountBased(Classifier c)
+	{
+		if(c instanceof NaiveBayesMultinomial)
+			return true;
+		if(c instanceof Vote)
+		{
+			for(Classifier member : ((Vote) c).getClassifiers())
+			{
+				if(isCountBased(member))
+					return true;
+			}
+		}
+		return false;
+	}
 	/**
 	 * Classifies the given test instance. The instance has to belong to a
 	 * dataset when it's being classified. Note that a classifier MUST implement
@@ -440,8 +1101,19 @@ public class WekaClassificationModelEngine extends AbstractClassificationModelEn
 	 *                if an error occurred during the prediction
 	 */
 	public double classifyInstance(Instance instance) throws Exception {
-
-		return clazzifier.classifyInstance(instance);
+		Classifier c = readerCopy();
+		if(c != null)
+		{
+			if(isReadSafe(c))
+				return c.classifyInstance(instance);
+			synchronized (c) {
+				return c.classifyInstance(instance);
+			}
+		}
+		
+		synchronized (this) {
+			return clazzifier.classifyInstance(instance);
+		}
 	}
 
 	/**
@@ -459,17 +1131,32 @@ public class WekaClassificationModelEngine extends AbstractClassificationModelEn
 	 *                if distribution could not be computed successfully
 	 */
 	public double[] distributionForInstance(Instance instance) throws Exception {
-
-		return clazzifier.distributionForInstance(instance);
+		Classifier c = readerCopy();
+		if(c != null)
+		{
+			if(isReadSafe(c))
+				return c.distributionForInstance(instance);
+			synchronized (c) {
+				return c.distributionForInstance(instance);
+			}
+		}
+		
+		synchronized (this) {
+			return clazzifier.distributionForInstance(instance);
+		}
 	}
 
 	@Override
 	public void incrementModel(Data nextInstance) throws Exception 
 	{
 		Instances filtered = filterInstances((WekaData) nextInstance);
-		filtered.setClassIndex(1);//for text classification, there will only be 2 attributes with the class being the last
+		//fixed attribute spaces have the class attribute last
+		if (!((vocabularyEnabled || hashingEnabled) && ((WekaData) nextInstance).isEnableFilter())) {
+			filtered.setClassIndex(1);//for text classification, there will only be 2 attributes with the class being the last
+		}
 		
-		while(!instanceQ.offer(filtered, 100, TimeUnit.MILLISECONDS));
+		instanceQ.put(filtered);
+		buildTask.schedule();
 	}
 	@Override
 	public WekaRegressionModel generateModelSnapshot() {
@@ -478,12 +1165,21 @@ public class WekaClassificationModelEngine extends AbstractClassificationModelEn
 		{
 			if (flush) {
 				log.info(domain+"| Flushing before model generation..");
-				flush();
+				if(!awaitApplied(flushTimeout))
+					log.warn(domain+"| Flush did not complete in "+flushTimeout+" ms. Snapshot may not include the latest enqueued instances");
+			}
+			//the build thread updates the classifier holding this lock
+			synchronized (this) {
+				m.setTrainedClassifier(copyOfCurrentVersion(true));
+				m.setAttribsInitialized(attribsInitialized);
+				m.setStructure(structure);
 			}
+			//terms assigned after the copy are not used by the model, and do not matter to the compatibility check
+			TermDictionary v = vocabulary;
+			if(v != null)
+				m.setVocabulary(v.getTerms());
 			m.setGeneratedOn(lastBuildAt);
-			m.setAttribsInitialized(attribsInitialized);
-			m.setTrainedClassifier(AbstractClassifier.makeCopy(clazzifier));
-			m.setStructure(structure);
+			log.debug(domain+"| Snapshot generated. "+getSnapshotStats());
 		} 
 		catch (Exception e) {
 			throw new OperationFailedUnexpectedly(domain+"| System Error! Unable to copy built classifier", e);
@@ -497,8 +1193,15 @@ public class WekaClassificationModelEngine extends AbstractClassificationModelEn
 	public WekaRegressionModel ensembleBuiltModels(List<RegressionModel> models, EnsembleCombiner combiner, WekaData evaluationSet) throws EngineException {
 		Classifier[] classifiers = new Classifier[models.size()];
 		int i = 0;
+		List<String> terms = null;
 		for (RegressionModel model : models) {
-			classifiers[i++] = ((WekaRegressionModel) model).getTrainedClassifier();
+			WekaRegressionModel wm = (WekaRegressionModel) model;
+			if(i > 0 && !WekaRegressionModel.isVocabularyCompatible(terms, wm.getVocabulary()))
+				throw new ModelMergeFailureException(domain+"| Cannot combine models trained on different vocabularies. The same term attribute "
+						+ "maps to different tokens across nodes; use feature hashing for clustered bag of words training");
+			if(i == 0 || (wm.getVocabulary() != null && wm.getVocabulary().size() > terms.size()))
+				terms = wm.getVocabulary();
+			classifiers[i++] = wm.getTrainedClassifier();
 		}
 
 		Classifier bestFit = null;
@@ -508,6 +1211,7 @@ public class WekaClassificationModelEngine extends AbstractClassificationModelEn
 		WekaRegressionModel m = new WekaRegressionModel();
 		m.setTrainedClassifier(bestFit);
 		m.setStructure(structure);
+		m.setVocabulary(terms);
 		return m;
 	}
 	@Override
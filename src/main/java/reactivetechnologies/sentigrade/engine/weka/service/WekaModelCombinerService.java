@@ -45,6 +45,7 @@ import java.util.concurrent.Future;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.annotation.PostConstruct;
 import javax.annotation.PreDestroy;
@@ -66,19 +67,28 @@ import org.springframework.stereotype.Service;
 import org.springframework.util.Assert;
 
 import com.hazelcast.core.DuplicateInstanceNameException;
+import com.hazelcast.core.EntryEvent;
 import com.hazelcast.core.ILock;
+import com.hazelcast.core.IMap;
 import com.hazelcast.core.ISet;
 import com.hazelcast.core.ITopic;
+import com.hazelcast.core.MapEvent;
 import com.hazelcast.core.Message;
 import com.hazelcast.core.MessageListener;
+import com.hazelcast.map.listener.EntryAddedListener;
+import com.hazelcast.map.listener.EntryEvictedListener;
+import com.hazelcast.map.listener.EntryRemovedListener;
+import com.hazelcast.map.listener.EntryUpdatedListener;
+import com.hazelcast.map.listener.MapClearedListener;
 
 import reactivetechnologies.sentigrade.WekaConfiguration;
+import reactivetechnologies.sentigrade.dto.ClassifiedModel;
 import reactivetechnologies.sentigrade.dto.CombinerResult;
 import reactivetechnologies.sentigrade.dto.RegressionModel;
 import reactivetechnologies.sentigrade.dto.Signal;
 import reactivetechnologies.sentigrade.dto.VectorRequestData;
 import reactivetechnologies.sentigrade.engine.ClassificationModelEngine;
-import reactivetechnologies.sentigrade.engine.nlp.SentimentAnalyzer.BuildInstancesDelegate;
+import reactivetechnologies.sentigrade.engine.nlp.SentimentAnalyzer.BuildInstancesDelegate.InstanceStream;
 import reactivetechnologies.sentigrade.engine.weka.AbstractClassificationModelEngine;
 import reactivetechnologies.sentigrade.engine.weka.EnsembleCombiner;
 import reactivetechnologies.sentigrade.engine.weka.dto.WekaRegressionModel;
@@ -90,7 +100,6 @@ import reactivetechnologies.sentigrade.services.ModelCombinerService;
 import reactivetechnologies.sentigrade.utils.ConfigUtil;
 import weka.classifiers.Classifier;
 import weka.core.Instance;
-import weka.core.Instances;
 
 
 /**
@@ -112,12 +121,21 @@ public class WekaModelCombinerService implements MessageListener<Signal>, ModelC
 	private String combinerOpts;
 	@Value("${weka.classifier.combiner.snapAwaitSecs:600}")
 	private int snapshotAwaitSecs;
+	@Value("${weka.classifier.combiner.cacheModel:true}")
+	private boolean cacheModel;
 	
 	@Autowired
 	private WekaConfiguration config;
 	
 	private Map<String, AbstractClassificationModelEngine> classifierBeans = new HashMap<>();
 	private ConcurrentMap<String, CountDownLatch> latches = new ConcurrentHashMap<>();
+	/*
+	 * Decoded ensemble models keyed by persist id. Entries are evicted by ModelCacheInvalidator
+	 * whenever the persisted entry changes anywhere in the cluster.
+	 */
+	private final ConcurrentMap<String, RegressionModel> modelCache = new ConcurrentHashMap<>();
+	private final AtomicLong cacheEpoch = new AtomicLong();
+	private String cacheListenerId;
 	
 	@Autowired
 	MessageContainerSupport msgContainer;
@@ -247,6 +265,7 @@ public class WekaModelCombinerService implements MessageListener<Signal>, ModelC
 		}
 		mapData.put(u, ensemble);
 		save(mapData, domain);
+		invalidateCachedModel(getPersistId(domain));
 		
 		return true;
 	}
@@ -336,9 +355,55 @@ public class WekaModelCombinerService implements MessageListener<Signal>, ModelC
 	private HazelcastOperations hzService;
 	private ITopic<Signal> commChannel;
 	
+	/**
+	 * Evicts the decoded model cached against the given persist id.
+	 * @param persistId
+	 */
+	private void invalidateCachedModel(Object persistId)
+	{
+		cacheEpoch.incrementAndGet();
+		if(modelCache.remove(persistId) != null)
+			log.debug("Evicted cached model for "+persistId);
+	}
+	/**
+	 * Listens to changes on the ensemble persist map, and evicts the local decoded model accordingly.
+	 */
+	private class ModelCacheInvalidator implements EntryAddedListener<Object, Object>, EntryUpdatedListener<Object, Object>,
+			EntryRemovedListener<Object, Object>, EntryEvictedListener<Object, Object>, MapClearedListener
+	{
+		@Override
+		public void entryAdded(EntryEvent<Object, Object> event) {
+			invalidateCachedModel(event.getKey());
+		}
+		@Override
+		public void entryUpdated(EntryEvent<Object, Object> event) {
+			invalidateCachedModel(event.getKey());
+		}
+		@Override
+		public void entryRemoved(EntryEvent<Object, Object> event) {
+			invalidateCachedModel(event.getKey());
+		}
+		@Override
+		public void entryEvicted(EntryEvent<Object, Object> event) {
+			invalidateCachedModel(event.getKey());
+		}
+		@Override
+		public void mapCleared(MapEvent event) {
+			cacheEpoch.incrementAndGet();
+			modelCache.clear();
+		}
+	}
+	private void registerCacheInvalidator()
+	{
+		IMap<Object, Object> persistMap = hzService.hazelcastInstance().getMap(ConfigUtil.WEKA_MODEL_PERSIST_MAP);
+		cacheListenerId = persistMap.addEntryListener(new ModelCacheInvalidator(), false);
+		log.info("Ensemble models will be cached locally, and invalidated on updates to IMap '"+ConfigUtil.WEKA_MODEL_PERSIST_MAP+"'");
+	}
 	@PreDestroy
 	void destroy()
 	{
+		if(cacheListenerId != null)
+			hzService.hazelcastInstance().getMap(ConfigUtil.WEKA_MODEL_PERSIST_MAP).removeEntryListener(cacheListenerId);
 		threads.shutdown();
 		try {
 			threads.awaitTermination(10, TimeUnit.SECONDS);
@@ -353,6 +418,8 @@ public class WekaModelCombinerService implements MessageListener<Signal>, ModelC
 		
 		commChannel = hzService.hazelcastInstance().getTopic(ConfigUtil.WEKA_COMMUNICATION_TOPIC);
 		commChannel.addMessageListener(this);
+		if(cacheModel)
+			registerCacheInvalidator();
 		//clusterLatch = hzService.hazelcastInstance().getCountDownLatch(ConfigUtil.WEKA_COMMUNICATION_TOPIC);
 		
 		threads = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), new ThreadFactory() {
@@ -484,8 +551,41 @@ public class WekaModelCombinerService implements MessageListener<Signal>, ModelC
 		this.processing = processing;
 	}
 	
-	private RegressionModel combineIfThenLoad(String domain, boolean buildNow) throws EngineException
+	/**
+	 * Get the decoded model from local cache, or load the latest from the persist map and cache it. 
+	 * A model loaded while an invalidation was in progress is returned, but not cached.
+	 * @param domain
+	 * @return
+	 */
+	private RegressionModel loadLastCached(String domain)
 	{
+		String id = getPersistId(domain);
+		RegressionModel model = modelCache.get(id);
+		if(model == null)
+		{
+			long epoch = cacheEpoch.get();
+			model = loadLast(domain);
+			if(epoch == cacheEpoch.get())
+			{
+				RegressionModel prev = modelCache.putIfAbsent(id, model);
+				if(prev != null)
+					model = prev;
+			}
+		}
+		return model;
+	}
+	/*
+	 * The loaded model may be the cached instance shared by all callers, hence the combine result is returned
+	 * alongside, and not set on the model.
+	 */
+	private ClassifiedModel<RegressionModel> combineIfThenLoad(String domain, boolean buildNow) throws EngineException
+	{
+		if(cacheModel && !buildNow)
+		{
+			RegressionModel cached = modelCache.get(getPersistId(domain));
+			if(cached != null)
+				return new ClassifiedModel<>(CombinerResult.IGNORED, cached);
+		}
 		CombinerResult result = CombinerResult.IGNORED;
 		if(buildNow || !hasPersistModel(domain))
 		{
@@ -500,9 +600,8 @@ public class WekaModelCombinerService implements MessageListener<Signal>, ModelC
 		}
 		try 
 		{
-			RegressionModel model =  loadLast(domain);
-			model.setCombineStatus(result);
-			return model;
+			RegressionModel model = cacheModel ? loadLastCached(domain) : loadLast(domain);
+			return new ClassifiedModel<>(result, model);
 		} 
 		catch (Exception e) {
 			throw new EngineException(domain+"| Unable to load latest saved model", e);
@@ -522,7 +621,11 @@ public class WekaModelCombinerService implements MessageListener<Signal>, ModelC
 	}
 	@Override
 	public RegressionModel retrieveModel(String domain, boolean buildNow) throws EngineException  {
-		return combineIfThenLoad(domain, buildNow);
+		return combineIfThenLoad(domain, buildNow).model;
+	}
+	@Override
+	public ClassifiedModel<RegressionModel> combineAndRetrieveModel(String domain) throws EngineException {
+		return combineIfThenLoad(domain, true);
 	}
 
 	@Override
@@ -536,7 +639,7 @@ public class WekaModelCombinerService implements MessageListener<Signal>, ModelC
 
 	@Override
 	public RegressionModel call() throws Exception {
-		return combineIfThenLoad("", true);
+		return combineIfThenLoad("", true).model;
 	}
 
 	@Override
@@ -570,37 +673,39 @@ public class WekaModelCombinerService implements MessageListener<Signal>, ModelC
 		}
 	}
 	
+	/*
+	 * Instances are pulled from a bounded stream, and incremented into the model as they are built. So memory
+	 * stays constant irrespective of the dataset size.
+	 */
 	private void updateModelEngine(VectorRequestData data) throws EngineException
 	{
-		BuildInstancesDelegate bld = data.toInstancesAsync();
-		Instance ins = null;
-		int tenPct = bld.getCount() / 10;
+		InstanceStream instances = data.toInstanceStream();
+		AbstractClassificationModelEngine engine = classifierBeans.get(data.getDomain());
+		int count = data.getDataSet().size();
+		int tenPct = data.isStreaming() ? VectorRequestData.STREAM_LOG_INTERVAL : Math.max(1, count / 10);
 		log.info(data.getDomain()+"| Starting analysis and build. This may take some time..");
 		long start = System.currentTimeMillis();
-		for(int i=0; i<bld.getCount(); i++)
+		int i = 0;
+		while(instances.hasNext())
 		{
 			try 
 			{
-				ins = bld.pollInstance();
-				if ((i+1) % tenPct == 0) {
-					log.info(data.getDomain()+"| Analyzed instance " + (i + 1) + " of " + bld.getCount());
+				Instance ins = instances.next();
+				if (++i % tenPct == 0) {
+					log.info(data.getDomain()+"| Analyzed instance " + i + (data.isStreaming() ? "" : " of " + count)+". "+instances);
 				}
-				classifierBeans.get(data.getDomain()).incrementModel(ins);
+				engine.incrementModel(ins);
 			} 
-			catch (InterruptedException e1) {
-				Thread.currentThread().interrupt();
-				e1.printStackTrace();
-			}
 			catch (Exception e) {
 				throw new EngineException(data.getDomain()+"| Exception while training model", e);
 			}
 			
 		}
 		long end = System.currentTimeMillis();
-		log.info(data.getDomain()+"| End model build. Time taken: "+ConfigUtil.toTimeElapsedString((end-start)));
+		log.info(data.getDomain()+"| End model build. Time taken: "+ConfigUtil.toTimeElapsedString((end-start))+". "+instances);
 	}
 	@Override
-	public void buildVectorModel(VectorRequestData data) throws EngineException {
+	public String buildVectorModel(VectorRequestData data) throws EngineException {
 		if(!classifierBeans.containsKey(data.getDomain()))
 			throw new EngineException("Invalid domain specified- "+data.getDomain());
 		
@@ -608,24 +713,22 @@ public class WekaModelCombinerService implements MessageListener<Signal>, ModelC
 		if(engine.isClassifierUpdatable())
 		{
 			updateModelEngine(data);
+			return null;
 		}
 		else
 		{
-			buildModelEngine(data);
+			return buildModelEngine(data);
 		}
 		
 	}
-	private void buildModelEngine(VectorRequestData data) throws EngineException {
-		log.info(data.getDomain()+"| Starting analysis and build on a non-incremental classifier. This may take some time..");
-		long start = System.currentTimeMillis();
-		Instances ins = data.toInstances();
-		try {
-			classifierBeans.get(data.getDomain()).buildClassifier(ins);
-		} catch (Exception e) {
-			throw new EngineException(data.getDomain()+"| Exception while training model", e);
-		}
-		long end = System.currentTimeMillis();
-		log.info(data.getDomain()+"| End model build. Time taken: "+ConfigUtil.toTimeElapsedString((end-start)));
+	@Autowired
+	private TrainingJobService trainingJobs;
+	/*
+	 * Non-incremental classifiers are trained as a background job, and the model swapped in on completion.
+	 */
+	private String buildModelEngine(VectorRequestData data) {
+		TrainingJob job = trainingJobs.submit(classifierBeans.get(data.getDomain()), data);
+		return job.getId();
 	}
 
 	
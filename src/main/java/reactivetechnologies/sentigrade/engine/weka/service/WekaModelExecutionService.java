@@ -15,7 +15,20 @@
  */
 package reactivetechnologies.sentigrade.engine.weka.service;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
 import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 
 import org.reactivetechnologies.ticker.messaging.base.Publisher;
 import org.slf4j.Logger;
@@ -24,8 +37,10 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import reactivetechnologies.sentigrade.WekaConfiguration;
 import reactivetechnologies.sentigrade.dto.ClassifiedModel;
 import reactivetechnologies.sentigrade.dto.CombinerResult;
+import reactivetechnologies.sentigrade.dto.RegressionModel;
 import reactivetechnologies.sentigrade.dto.RequestData;
 import reactivetechnologies.sentigrade.dto.VectorRequestData;
 import reactivetechnologies.sentigrade.dto.VectorRequestDataFactoryBean;
@@ -33,6 +48,8 @@ import reactivetechnologies.sentigrade.engine.ClassificationModelEngine;
 import reactivetechnologies.sentigrade.engine.weka.dto.WekaData;
 import reactivetechnologies.sentigrade.engine.weka.dto.WekaRegressionModel;
 import reactivetechnologies.sentigrade.err.EngineException;
+import reactivetechnologies.sentigrade.err.ModelNotFoundException;
+import reactivetechnologies.sentigrade.err.RequestRejectedException;
 import reactivetechnologies.sentigrade.services.ModelCombinerService;
 import reactivetechnologies.sentigrade.services.ModelExecutionService;
 import weka.classifiers.Classifier;
@@ -48,11 +65,23 @@ public class WekaModelExecutionService implements ModelExecutionService {
 	private ModelCombinerService combiner;
 	@Autowired
 	private VectorRequestDataFactoryBean dataFactory;
+	@Autowired
+	private WekaConfiguration config;
 	
 	@Value("${weka.classifier.train.dataset.batch.size:100}")
 	private int maxDataLen;
 	@Value("${weka.classifier.train.dataset.batch:false}")
 	private boolean batchEnabled;
+	@Value("${weka.classifier.classify.threads:0}")
+	private int classifyThreadCount;
+	@Value("${weka.classifier.classify.backlog:100}")
+	private int classifyBacklog;
+	@Value("${weka.classifier.classify.queueTimeoutMillis:5000}")
+	private long queueTimeoutMillis;
+	
+	private ExecutorService classifyThreads;
+	//one per configured domain, created on startup
+	private final ConcurrentMap<String, Semaphore> admissions = new ConcurrentHashMap<>();
 	private static final Logger log = LoggerFactory.getLogger(WekaModelExecutionService.class);
 	
 	public static String getDomain(String domain)
@@ -88,26 +117,37 @@ public class WekaModelExecutionService implements ModelExecutionService {
 	public double classifyInstance(Instance instance, String domain) throws Exception {
 		WekaRegressionModel model = (WekaRegressionModel) combiner.retrieveModel(getDomain(domain), false);
 		instance.setDataset(model.getStructure());
-		return model.getTrainedClassifier().classifyInstance(instance);
+		return classifyOnModel(model, instance);
+	}
+	/*
+	 * The retrieved model is a locally cached instance, shared across request threads. Some Weka
+	 * classifiers (for e.g. LWL) modify their internal state while predicting, hence the lock.
+	 */
+	private static double classifyOnModel(WekaRegressionModel model, Instance instance) throws Exception
+	{
+		synchronized (model) {
+			return model.getTrainedClassifier().classifyInstance(instance);
+		}
 	}
 
 	@SuppressWarnings("unchecked")
 	@Override
 	public ClassifiedModel<Classifier> gatherClassifier(String domain) throws EngineException {
-		WekaRegressionModel model = (WekaRegressionModel) combiner.retrieveModel(getDomain(domain), true);
-		return new ClassifiedModel<>(model.getCombineStatus(), model.getTrainedClassifier());
+		ClassifiedModel<RegressionModel> combined = combiner.combineAndRetrieveModel(getDomain(domain));
+		return new ClassifiedModel<>(combined.status, ((WekaRegressionModel) combined.model).getTrainedClassifier());
 	}
 	@Override
-	public void buildClassifier(RequestData request) throws EngineException {
+	public String buildClassifier(RequestData request) throws EngineException {
 		try 
 		{
 			if(request instanceof VectorRequestData)
 			{
-				combiner.buildVectorModel((VectorRequestData) request);
+				return combiner.buildVectorModel((VectorRequestData) request);
 			}
 			else
 			{
 				buildClassifier(request.toInstances(), request.getDomain(), true);
+				return null;
 			}
 		} 
 		catch (Exception e) {
@@ -132,7 +172,9 @@ public class WekaModelExecutionService implements ModelExecutionService {
 		try 
 		{
 			RequestData parsedRequest = parseTestRequest(request);
-			return classifyInstanceAsString(parsedRequest.toInstance(), parsedRequest.getDomain());
+			Instance instance = parsedRequest.toInstance();
+			request.setAnalysisTier(parsedRequest.getAnalysisTier());
+			return classifyInstanceAsString(instance, parsedRequest.getDomain());
 			
 		} 
 		catch (Exception e) 
@@ -141,19 +183,136 @@ public class WekaModelExecutionService implements ModelExecutionService {
 		}
 	}
 	
+	@Override
+	public List<String> classifyBatch(RequestData request) throws Exception {
+		try 
+		{
+			RequestData parsedRequest = parseTestRequest(request);
+			WekaRegressionModel model = (WekaRegressionModel) combiner.retrieveModel(getDomain(parsedRequest.getDomain()), false);
+			List<Instance> instances = parsedRequest.toInstanceList();
+			List<String> labels = new ArrayList<>(instances.size());
+			for(Instance instance : instances)
+			{
+				instance.setDataset(model.getStructure());
+				double d = classifyOnModel(model, instance);
+				labels.add(model.getStructure().classAttribute().value((int) d));
+			}
+			return labels;
+		} 
+		catch (Exception e) 
+		{
+			throw new EngineException(e);
+		}
+	}
+	
 	private String classifyInstanceAsString(Instance instance, String domain) throws Exception {
 		WekaRegressionModel model = (WekaRegressionModel) combiner.retrieveModel(getDomain(domain), false);
 		instance.setDataset(model.getStructure());
-		double d = model.getTrainedClassifier().classifyInstance(instance);
+		double d = classifyOnModel(model, instance);
 		return model.getStructure().classAttribute().value((int) d);
 	}
 	
+	/**
+	 * The admission permits of a configured domain.
+	 * @param domain
+	 * @return null if the domain is not configured
+	 */
+	private Semaphore admissionFor(String domain)
+	{
+		return admissions.get(domain);
+	}
+	/**
+	 * Run an admitted classification request, unless it has waited in queue beyond the deadline.
+	 */
+	private class ClassifyTask implements Runnable
+	{
+		private final RequestData request;
+		private final CompletableFuture<String> future;
+		private final Semaphore permits;
+		private final long admittedAt = System.currentTimeMillis();
+		
+		ClassifyTask(RequestData request, CompletableFuture<String> future, Semaphore permits) {
+			super();
+			this.request = request;
+			this.future = future;
+			this.permits = permits;
+		}
+
+		@Override
+		public void run() {
+			try 
+			{
+				if(future.isDone())
+					return;
+				long waited = System.currentTimeMillis() - admittedAt;
+				if(queueTimeoutMillis > 0 && waited > queueTimeoutMillis)
+				{
+					future.completeExceptionally(new RequestRejectedException(getDomain(request.getDomain())+"| Request expired after waiting "+waited+" ms in queue"));
+					return;
+				}
+				future.complete(classifyInstance(request));
+			} 
+			catch (Exception e) {
+				future.completeExceptionally(e);
+			}
+			finally {
+				permits.release();
+			}
+		}
+	}
+	@Override
+	public CompletableFuture<String> classifyInstanceAsync(RequestData request) {
+		CompletableFuture<String> future = new CompletableFuture<>();
+		String domain = getDomain(request.getDomain());
+		Semaphore permits = admissionFor(domain);
+		if(permits == null)
+		{
+			future.completeExceptionally(new ModelNotFoundException(domain+"| Not a configured classifier domain"));
+			return future;
+		}
+		if(!permits.tryAcquire())
+		{
+			future.completeExceptionally(new RequestRejectedException(domain+"| Classification backlog is full. Retry later"));
+			return future;
+		}
+		try {
+			classifyThreads.execute(new ClassifyTask(request, future, permits));
+		} catch (RejectedExecutionException e) {
+			permits.release();
+			future.completeExceptionally(new RequestRejectedException(domain+"| Classification request not accepted", e));
+		}
+		return future;
+	}
+	
 	@PostConstruct
 	private void init()
 	{
 		if (log.isDebugEnabled()) {
 			log.debug("request json struct:\n" + RequestData.sampleJson());
 		}
+		for(String domain : config.splitDomains())
+			admissions.put(getDomain(domain), new Semaphore(classifyBacklog));
+		classifyThreadCount = classifyThreadCount > 0 ? classifyThreadCount : Runtime.getRuntime().availableProcessors();
+		classifyThreads = Executors.newFixedThreadPool(classifyThreadCount, new ThreadFactory() {
+			int n = 0;
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "ClassifyThread-"+(n++));
+				t.setDaemon(true);
+				return t;
+			}
+		});
+		log.info("Classification requests will be admitted with a backlog of "+classifyBacklog+" per domain, on "+classifyThreadCount+" threads");
+	}
+	@PreDestroy
+	private void destroy()
+	{
+		classifyThreads.shutdown();
+		try {
+			classifyThreads.awaitTermination(10, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
 	}
 	@SuppressWarnings("unchecked")
 	@Override
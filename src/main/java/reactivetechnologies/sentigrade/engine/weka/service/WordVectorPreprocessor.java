@@ -31,13 +31,14 @@ package reactivetechnologies.sentigrade.engine.weka.service;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import reactivetechnologies.sentigrade.engine.nlp.LemmatizationStemmer;
+import reactivetechnologies.sentigrade.engine.nlp.DocumentLemmatizer;
 import reactivetechnologies.sentigrade.engine.weka.AbstractClassificationModelEngine;
 import weka.attributeSelection.InfoGainAttributeEval;
 import weka.attributeSelection.Ranker;
 import weka.core.Instances;
 import weka.core.Utils;
 import weka.core.tokenizers.NGramTokenizer;
+import weka.core.tokenizers.Tokenizer;
 import weka.filters.Filter;
 import weka.filters.supervised.attribute.AttributeSelection;
 import weka.filters.unsupervised.attribute.NumericToNominal;
@@ -62,6 +63,14 @@ public class WordVectorPreprocessor {
 	private WordVectorPreprocessor() {
 		super();
 	}
+	/*
+	 * Created on first use of lemmatization.
+	 */
+	private static class LemmatizerHolder
+	{
+		private static final int LEMMA_CACHE_SIZE = 50000;
+		private static final DocumentLemmatizer lemmatizer = new DocumentLemmatizer(0, LEMMA_CACHE_SIZE);
+	}
 	
 	public static class ArgSwitch
 	{
@@ -69,7 +78,28 @@ public class WordVectorPreprocessor {
 		boolean useFeatureSelect = true;
 		boolean useNominalAttrib = true;
 		boolean useLemmatizer = false;
+		boolean useHashing = false;
+		int hashBuckets = 1 << 16;
+		boolean signedHashing = true;
 		
+		public boolean isSignedHashing() {
+			return signedHashing;
+		}
+		public void setSignedHashing(boolean signedHashing) {
+			this.signedHashing = signedHashing;
+		}
+		public boolean isUseHashing() {
+			return useHashing;
+		}
+		public void setUseHashing(boolean useHashing) {
+			this.useHashing = useHashing;
+		}
+		public int getHashBuckets() {
+			return hashBuckets;
+		}
+		public void setHashBuckets(int hashBuckets) {
+			this.hashBuckets = hashBuckets;
+		}
 		public boolean isUseLemmatizer() {
 			return useLemmatizer;
 		}
@@ -96,6 +126,34 @@ public class WordVectorPreprocessor {
 		}
 	}
 
+	/**
+	 * Hash the tokens of the string attribute into a fixed number of (optionally signed) buckets, in parallel across instances. The 
+	 * class attribute is placed last. No word dictionary is built, and no feature selection is done, so that the attribute
+	 * space remains the same across datasets.
+	 * @param dataRaw
+	 * @param args
+	 * @return
+	 * @throws Exception
+	 */
+	private static Instances hash(Instances dataRaw, final ArgSwitch args) throws Exception
+	{
+		if (args.useLemmatizer) {
+			dataRaw = LemmatizerHolder.lemmatizer.lemmatize(dataRaw);
+		}
+		FeatureHasher hasher = new FeatureHasher(args.hashBuckets, dataRaw.classIndex() >= 0 ? dataRaw.classAttribute() : dataRaw.attribute(dataRaw.numAttributes() - 1), args.signedHashing);
+		ThreadLocal<Tokenizer> tokenizers = new ThreadLocal<Tokenizer>(){
+			@Override
+			protected Tokenizer initialValue() {
+				if (args.useLucene) {
+					LuceneWordTokenizer t = new LuceneWordTokenizer();
+					t.enableStemming(!args.useLemmatizer);
+					return t;
+				}
+				return new NGramTokenizer();
+			}
+		};
+		return hasher.vectorize(dataRaw, tokenizers);
+	}
 	/**
 	 * Converts String attributes into a set of attributes representing word
 	 * occurrence information from the text contained in the strings. The set of
@@ -116,6 +174,9 @@ public class WordVectorPreprocessor {
 		//Most classifiers in Weka cannot handle String attributes. For these learning schemes one has to process the data with appropriate filters, 
 		//e.g., the StringToWordVector filter which can perform TF/IDF transformation
 		
+		if (args.useHashing) {
+			return hash(dataRaw, args);
+		}
 		LuceneWordTokenizer lucenTokens = null;
 		
 		
@@ -135,10 +196,9 @@ public class WordVectorPreprocessor {
 			else
 				strToWord.setTokenizer(new NGramTokenizer());
 			
-			final Instances struct = AbstractClassificationModelEngine.getStructure(dataRaw);
-			
 			if (args.useLemmatizer) {
-				strToWord.setStemmer(new LemmatizationStemmer());
+				//lemmatize whole documents upfront, instead of a stemmer invoked per token
+				dataRaw = LemmatizerHolder.lemmatizer.lemmatize(dataRaw);
 			}
 			else
 			{
@@ -146,6 +206,7 @@ public class WordVectorPreprocessor {
 					lucenTokens.enableStemming(true);
 					
 			}
+			final Instances struct = AbstractClassificationModelEngine.getStructure(dataRaw);
 			strToWord.setInputFormat(struct);
 			
 			Instances wordVector = Filter.useFilter(dataRaw, strToWord);
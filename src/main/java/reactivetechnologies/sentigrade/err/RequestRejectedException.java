@@ -0,0 +1,43 @@
+/**
+ * Copyright 2017 esutdal
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package reactivetechnologies.sentigrade.err;
+
+/**
+ * Thrown when a request is not admitted for execution, or has waited in queue beyond its deadline.
+ */
+public class RequestRejectedException extends EngineException {
+
+	/**
+	 * 
+	 */
+	private static final long serialVersionUID = 1L;
+
+	public RequestRejectedException() {
+	}
+
+	public RequestRejectedException(String arg0) {
+		super(arg0);
+	}
+
+	public RequestRejectedException(Throwable arg0) {
+		super(arg0);
+	}
+
+	public RequestRejectedException(String arg0, Throwable arg1) {
+		super(arg0, arg1);
+	}
+
+}
@@ -18,6 +18,7 @@ package reactivetechnologies.sentigrade.services;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
 
+import reactivetechnologies.sentigrade.dto.ClassifiedModel;
 import reactivetechnologies.sentigrade.dto.RegressionModel;
 import reactivetechnologies.sentigrade.dto.VectorRequestData;
 import reactivetechnologies.sentigrade.engine.nlp.SentimentVector;
@@ -36,6 +37,14 @@ public interface ModelCombinerService {
 	 * @throws EngineException 
 	 */
 	RegressionModel retrieveModel(String domain, boolean buildNow) throws EngineException;
+	/**
+	 * Signal a cluster wide build, and retrieve the resulting ensemble classifier model, along with the result of 
+	 * the combine executed by this invocation.
+	 * @param domain
+	 * @return
+	 * @throws EngineException
+	 */
+	ClassifiedModel<RegressionModel> combineAndRetrieveModel(String domain) throws EngineException;
 	/**
 	 * Build an ensemble classifier with incremental snapshots across and return the latest result, asynchronously. The passed
 	 * {@linkplain ExecutorService} maybe null, and in that case an internal thread pool will be used.
@@ -53,10 +62,11 @@ public interface ModelCombinerService {
 	
 	/**
 	 * Build a non-incremental classifier, based on a {@linkplain SentimentVector} based model. This model will be built locally
-	 * and the instance will not be distributed.
+	 * and the instance will not be distributed. A non-incremental classifier is built as a background job.
 	 * @param data
+	 * @return the training job id, or null if the classifier was updated incrementally
 	 * @throws EngineException 
 	 */
-	void buildVectorModel(VectorRequestData data) throws EngineException;
+	String buildVectorModel(VectorRequestData data) throws EngineException;
 	
 }
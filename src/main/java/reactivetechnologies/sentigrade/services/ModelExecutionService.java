@@ -15,9 +15,14 @@
  */
 package reactivetechnologies.sentigrade.services;
 
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
 import reactivetechnologies.sentigrade.dto.ClassifiedModel;
 import reactivetechnologies.sentigrade.dto.RequestData;
 import reactivetechnologies.sentigrade.err.EngineException;
+import reactivetechnologies.sentigrade.err.ModelNotFoundException;
+import reactivetechnologies.sentigrade.err.RequestRejectedException;
 import weka.core.Instance;
 import weka.core.Instances;
 
@@ -54,9 +59,10 @@ public interface ModelExecutionService {
 	/**
 	 * Integration API to {@link #buildClassifier(Instances, String)}.
 	 * @param request
+	 * @return the training job id, if the build was submitted as a background job; else null
 	 * @throws EngineException 
 	 */
-	void buildClassifier(RequestData request) throws EngineException;
+	String buildClassifier(RequestData request) throws EngineException;
 	
 	/**
 	 * Integration API to {@link #classifyInstance(Instance, String)}.
@@ -65,4 +71,22 @@ public interface ModelExecutionService {
 	 * @throws Exception
 	 */
 	String classifyInstance(RequestData request) throws Exception;
+	
+	/**
+	 * Asynchronous version of {@link #classifyInstance(RequestData)}, with admission control. The request is admitted 
+	 * only if there is capacity in the backlog for its domain. The returned future completes exceptionally with a
+	 * {@linkplain RequestRejectedException} if the request is not admitted, or if it waited in queue beyond the deadline.
+	 * Requests to a domain that is not configured complete with a {@linkplain ModelNotFoundException}.
+	 * @param request
+	 * @return
+	 */
+	CompletableFuture<String> classifyInstanceAsync(RequestData request);
+	
+	/**
+	 * Classify all the tuples of the request against a single resolved model. 
+	 * @param request
+	 * @return class labels, in the same order as the request tuples
+	 * @throws Exception
+	 */
+	List<String> classifyBatch(RequestData request) throws Exception;
 }
@@ -0,0 +1,111 @@
+/**
+ * Copyright 2017 esutdal
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package analytics.weka;
+
+import java.util.Arrays;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.BlockJUnit4ClassRunner;
+
+import reactivetechnologies.sentigrade.engine.weka.service.FeatureHasher;
+import weka.core.Attribute;
+import weka.core.Instance;
+import weka.core.tokenizers.WordTokenizer;
+
+@RunWith(BlockJUnit4ClassRunner.class)
+public class FeatureHasherTest {
+
+	private static Attribute classAttribute()
+	{
+		return new Attribute("class", Arrays.asList("neg", "pos"));
+	}
+	private static Instance vectorize(FeatureHasher hasher, String text)
+	{
+		return hasher.vectorize(text, 0, 1.0, new WordTokenizer());
+	}
+	/*
+	 * A token whose sign is opposite to that of the given one, in a single bucket hasher.
+	 */
+	private static String oppositeOf(FeatureHasher signed, String token)
+	{
+		double sign = vectorize(signed, token).value(0);
+		for (char c = 'a'; c <= 'z'; c++) {
+			for (char d = 'a'; d <= 'z'; d++) {
+				String t = "" + c + d;
+				if(vectorize(signed, t).value(0) == -sign)
+					return t;
+			}
+		}
+		throw new AssertionError("No token found with opposite sign");
+	}
+	@Test
+	public void testSameTokenSameBucket()
+	{
+		FeatureHasher hasher = new FeatureHasher(1024, classAttribute());
+		for(String token : Arrays.asList("good", "bad", "movie", "a", "supercalifragilistic"))
+		{
+			int bucket = hasher.bucketOf(token);
+			Assert.assertTrue(bucket >= 0 && bucket < 1024);
+			Assert.assertEquals(bucket, new FeatureHasher(1024, classAttribute(), false).bucketOf(token));
+			
+			Instance once = vectorize(hasher, token);
+			Assert.assertEquals(2, once.numValues());
+			Assert.assertEquals(bucket, once.index(0));
+			Assert.assertEquals(1, Math.abs(once.value(bucket)), 0);
+			//repeated tokens add up in the same bucket, with the same sign
+			Instance thrice = vectorize(hasher, token+" "+token+" "+token);
+			Assert.assertEquals(2, thrice.numValues());
+			Assert.assertEquals(3 * once.value(bucket), thrice.value(bucket), 0);
+		}
+	}
+	@Test
+	public void testSignedCollisionsCancel()
+	{
+		FeatureHasher signed = new FeatureHasher(1, classAttribute(), true);
+		String token = "good";
+		String opposite = oppositeOf(signed, token);
+		Instance i = vectorize(signed, token+" "+opposite);
+		//only the class value remains
+		Assert.assertEquals(1, i.numValues());
+		Assert.assertEquals(0, i.value(0), 0);
+		
+		i = vectorize(signed, token+" "+opposite+" "+token);
+		Assert.assertEquals(vectorize(signed, token).value(0), i.value(0), 0);
+	}
+	@Test
+	public void testUnsignedCountsNonNegative()
+	{
+		FeatureHasher signed = new FeatureHasher(1, classAttribute(), true);
+		FeatureHasher unsigned = new FeatureHasher(1, classAttribute(), false);
+		String token = "good";
+		String opposite = oppositeOf(signed, token);
+		Instance i = vectorize(unsigned, token+" "+opposite+" "+token);
+		Assert.assertEquals(3, i.value(0), 0);
+		
+		unsigned = new FeatureHasher(16, classAttribute(), false);
+		i = vectorize(unsigned, "the quick brown fox jumps over the lazy dog and the cat");
+		double total = 0;
+		for (int k = 0; k < i.numValues(); k++) {
+			if(i.index(k) == i.classIndex())
+				continue;
+			Assert.assertTrue(i.valueSparse(k) > 0);
+			total += i.valueSparse(k);
+		}
+		Assert.assertEquals(12, total, 0);
+	}
+}
@@ -0,0 +1,131 @@
+/**
+ * Copyright 2017 esutdal
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package analytics.weka;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.BlockJUnit4ClassRunner;
+
+import reactivetechnologies.sentigrade.engine.weka.service.IngestionRingBuffer;
+
+@RunWith(BlockJUnit4ClassRunner.class)
+public class IngestionRingBufferTest {
+
+	@Test
+	public void testOfferWhenFull()
+	{
+		IngestionRingBuffer<Integer> ring = new IngestionRingBuffer<>(3);
+		Assert.assertEquals(4, ring.capacity());
+		Assert.assertTrue(ring.isEmpty());
+		for (int i = 0; i < 4; i++) {
+			Assert.assertTrue(ring.offer(i));
+		}
+		Assert.assertFalse(ring.offer(4));
+		Assert.assertEquals(4, ring.size());
+		Assert.assertEquals(4, ring.claimed());
+		
+		List<Integer> batch = new ArrayList<>();
+		Assert.assertEquals(3, ring.drainTo(batch, 3));
+		Assert.assertEquals(3, ring.consumed());
+		Assert.assertTrue(ring.offer(4));
+		Assert.assertEquals(2, ring.drainTo(batch, 10));
+		Assert.assertTrue(ring.isEmpty());
+		for (int i = 0; i < 5; i++) {
+			Assert.assertEquals(Integer.valueOf(i), batch.get(i));
+		}
+	}
+	/*
+	 * Producers put their own increasing sequence, through a buffer much smaller than the total, so that they 
+	 * wrap around and wait on a full buffer. The consumer must see each producer's elements exactly once, and in order.
+	 */
+	@Test
+	public void testConcurrentOfferDrainOrdering() throws Exception
+	{
+		final int producers = 4, perProducer = 50000;
+		final IngestionRingBuffer<long[]> ring = new IngestionRingBuffer<>(64);
+		ExecutorService threads = Executors.newFixedThreadPool(producers);
+		final CountDownLatch start = new CountDownLatch(1);
+		List<Future<?>> done = new ArrayList<>();
+		try 
+		{
+			for (int p = 0; p < producers; p++) {
+				final int producer = p;
+				done.add(threads.submit(new Runnable() {
+					
+					@Override
+					public void run() {
+						try {
+							start.await();
+							for (int i = 0; i < perProducer; i++) {
+								long[] e = {producer, i};
+								if(i % 2 == 0)
+									ring.put(e);
+								else
+								{
+									while(!ring.offer(e))
+										Thread.yield();
+								}
+							}
+						} catch (InterruptedException e) {
+							Thread.currentThread().interrupt();
+						}
+					}
+				}));
+			}
+			start.countDown();
+			
+			long[] next = new long[producers];
+			List<long[]> batch = new ArrayList<>();
+			long received = 0, deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(60);
+			while (received < (long) producers * perProducer) 
+			{
+				Assert.assertTrue("timed out draining", System.currentTimeMillis() < deadline);
+				int n = ring.drainTo(batch, 16);
+				Assert.assertTrue(n <= 16);
+				for(long[] e : batch)
+				{
+					int producer = (int) e[0];
+					Assert.assertEquals("producer "+producer, next[producer]++, e[1]);
+				}
+				received += n;
+				batch.clear();
+				if(n == 0)
+					Thread.yield();
+			}
+			for(Future<?> f : done)
+				f.get(10, TimeUnit.SECONDS);
+			
+			Assert.assertTrue(ring.isEmpty());
+			Assert.assertEquals(received, ring.claimed());
+			Assert.assertEquals(received, ring.consumed());
+			for (int p = 0; p < producers; p++) {
+				Assert.assertEquals(perProducer, next[p]);
+			}
+		} 
+		finally {
+			threads.shutdownNow();
+		}
+	}
+}
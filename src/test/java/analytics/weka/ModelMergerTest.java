@@ -0,0 +1,146 @@
+/**
+ * Copyright 2017 esutdal
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package analytics.weka;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.BlockJUnit4ClassRunner;
+
+import reactivetechnologies.sentigrade.engine.weka.EnsembleCombiner;
+import reactivetechnologies.sentigrade.engine.weka.ModelMerger;
+import weka.classifiers.AbstractClassifier;
+import weka.classifiers.Classifier;
+import weka.classifiers.UpdateableClassifier;
+import weka.classifiers.bayes.NaiveBayesMultinomialUpdateable;
+import weka.classifiers.bayes.NaiveBayesUpdateable;
+import weka.classifiers.meta.Vote;
+import weka.core.Attribute;
+import weka.core.DenseInstance;
+import weka.core.Instance;
+import weka.core.Instances;
+
+@RunWith(BlockJUnit4ClassRunner.class)
+public class ModelMergerTest {
+
+	private static Instances structure()
+	{
+		ArrayList<Attribute> attribs = new ArrayList<>();
+		for (int i = 0; i < 5; i++) {
+			attribs.add(new Attribute("w"+i));
+		}
+		attribs.add(new Attribute("class", Arrays.asList("neg", "pos")));
+		Instances s = new Instances("merge", attribs, 0);
+		s.setClassIndex(s.numAttributes()-1);
+		return s;
+	}
+	private static Instance randomInstance(Instances s, Random r)
+	{
+		Instance i = new DenseInstance(s.numAttributes());
+		i.setDataset(s);
+		for (int a = 0; a < s.numAttributes()-1; a++) {
+			i.setValue(a, r.nextInt(4));
+		}
+		i.setClassValue(r.nextInt(2));
+		return i;
+	}
+	@Test
+	public void testMergedShardsEqualSingleModel() throws Exception
+	{
+		Instances s = structure();
+		NaiveBayesMultinomialUpdateable prior = new NaiveBayesMultinomialUpdateable();
+		prior.buildClassifier(s);
+		Classifier single = AbstractClassifier.makeCopy(prior);
+		Classifier[] shards = {AbstractClassifier.makeCopy(prior), AbstractClassifier.makeCopy(prior), AbstractClassifier.makeCopy(prior)};
+		
+		Random r = new Random(7);
+		for (int n = 0; n < 300; n++) {
+			Instance i = randomInstance(s, r);
+			((NaiveBayesMultinomialUpdateable) single).updateClassifier(i);
+			((NaiveBayesMultinomialUpdateable) shards[n % shards.length]).updateClassifier(i);
+		}
+		Assert.assertTrue(ModelMerger.isMergeable(prior));
+		Classifier merged = AbstractClassifier.makeCopy(shards[0]);
+		for (int k = 1; k < shards.length; k++) {
+			ModelMerger.addStatistics(merged, shards[k], prior);
+		}
+		for (int n = 0; n < 50; n++) {
+			Instance test = randomInstance(s, r);
+			Assert.assertArrayEquals(single.distributionForInstance(test), merged.distributionForInstance(test), 1e-9);
+		}
+	}
+	private static Instances mixedStructure()
+	{
+		ArrayList<Attribute> attribs = new ArrayList<>();
+		attribs.add(new Attribute("n0"));
+		attribs.add(new Attribute("d0", Arrays.asList("a", "b", "c")));
+		attribs.add(new Attribute("d1", Arrays.asList("x", "y")));
+		attribs.add(new Attribute("class", Arrays.asList("neg", "pos")));
+		Instances s = new Instances("mixed", attribs, 0);
+		s.setClassIndex(s.numAttributes()-1);
+		return s;
+	}
+	private static Instance randomMixedInstance(Instances s, Random r)
+	{
+		Instance i = new DenseInstance(s.numAttributes());
+		i.setDataset(s);
+		i.setValue(0, r.nextInt(100) / 10.0);
+		i.setValue(1, r.nextInt(3));
+		i.setValue(2, r.nextInt(2));
+		i.setClassValue(r.nextInt(2));
+		return i;
+	}
+	@Test
+	public void testMergingCombinerOnNaiveBayes() throws Exception
+	{
+		Instances s = mixedStructure();
+		Classifier single = new NaiveBayesUpdateable();
+		single.buildClassifier(s);
+		Classifier[] members = new Classifier[4];
+		for (int k = 0; k < members.length; k++) {
+			members[k] = new NaiveBayesUpdateable();
+			members[k].buildClassifier(s);
+		}
+		Random r = new Random(11);
+		for (int n = 0; n < 400; n++) {
+			Instance i = randomMixedInstance(s, r);
+			((UpdateableClassifier) single).updateClassifier(i);
+			((UpdateableClassifier) members[n % members.length]).updateClassifier(i);
+		}
+		Classifier merged = EnsembleCombiner.MERGING.getEnsembleClassifier(members, null, null);
+		Assert.assertTrue(merged instanceof NaiveBayesUpdateable);
+		for (int n = 0; n < 50; n++) {
+			Instance test = randomMixedInstance(s, r);
+			Assert.assertArrayEquals(single.distributionForInstance(test), merged.distributionForInstance(test), 1e-6);
+		}
+	}
+	@Test
+	public void testMergingFallsBackToVoteOnDifferentHeaders() throws Exception
+	{
+		Instances s = mixedStructure();
+		Instances other = new Instances(s, 0);
+		other.renameAttribute(0, "n1");
+		Classifier[] members = {new NaiveBayesUpdateable(), new NaiveBayesUpdateable()};
+		members[0].buildClassifier(s);
+		members[1].buildClassifier(other);
+		Classifier combined = EnsembleCombiner.MERGING.getEnsembleClassifier(members, null, null);
+		Assert.assertTrue(combined instanceof Vote);
+	}
+}
@@ -0,0 +1,182 @@
+/**
+ * Copyright 2017 esutdal
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package analytics.weka;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.BlockJUnit4ClassRunner;
+
+import edu.stanford.nlp.trees.Tree;
+import edu.stanford.nlp.trees.tregex.TregexMatcher;
+import edu.stanford.nlp.trees.tregex.TregexPattern;
+import reactivetechnologies.sentigrade.engine.nlp.PhraseScoreExtractor;
+import reactivetechnologies.sentigrade.engine.nlp.SentimentLexicon;
+import reactivetechnologies.sentigrade.engine.nlp.SentimentVector;
+
+@RunWith(BlockJUnit4ClassRunner.class)
+public class PhraseScoreExtractorTest {
+
+	private static final double DELTA = 1e-9;
+	private static final String[] TREES = new String[]{
+		"(ROOT (S (NP (DT The) (NN movie)) (VP (VBD was) (ADJP (RB very) (JJ good))) (. .)))",
+		"(ROOT (S (NP (PRP I)) (VP (VBP love) (NP (DT this) (JJ beautiful) (NN film))) (. !)))",
+		"(ROOT (S (NP (DT The) (NN plot)) (VP (VBZ is) (ADVP (RB really)) (ADJP (ADJP (JJR worse)) (PP (IN than) (NP (PRP it)))) (VP (VBN expected))) (. .)))",
+		"(ROOT (S (NP-SBJ (NNS critics)) (VP-TMP (VBD hated) (ADVP (RBS most) (ADVP (RB badly))) (NP (DT the) (JJS worst) (NN ending))) (. .)))",
+		"(ROOT (S (VP (VB Go) (VP (VBG seeing) (ADJP (RBR more) (JJ good) (NN stuff)))) (. .)))",
+		"(ROOT (NP (DT a) (JJ bad) (NN movie)))",
+		"(ROOT (S (NP (NN bad-3)) (VP (VBD was) (ADJP (JJ good2)))))",
+	};
+	
+	private final Map<String, Double> words = new HashMap<>();
+	private final SentimentLexicon lexicon = new SentimentLexicon() {
+		
+		@Override
+		public boolean isLoaded() {
+			return true;
+		}
+		
+		@Override
+		public double extract(CharSequence word, char pos) {
+			String key = word.toString().replaceAll("([^a-zA-Z\\s])", "") + "#" + pos;
+			return words.containsKey(key) ? words.get(key) : 0.0;
+		}
+	};
+	{
+		words.put("good#a", 0.625);
+		words.put("good#n", 0.5);
+		words.put("beautiful#a", 0.75);
+		words.put("bad#a", -0.625);
+		words.put("bad#n", -0.25);
+		words.put("worse#a", -0.5);
+		words.put("worst#a", -0.75);
+		words.put("very#r", 0.125);
+		words.put("really#r", 0.25);
+		words.put("more#r", 0.125);
+		words.put("most#r", 0.0625);
+		words.put("badly#r", -0.375);
+		words.put("love#v", 0.5);
+		words.put("hated#v", -0.625);
+		words.put("expected#v", 0.125);
+		words.put("movie#n", 0.0625);
+		words.put("film#n", 0.125);
+		words.put("stuff#n", -0.125);
+		words.put("ending#n", -0.0625);
+		words.put("go#v", 0.0625);
+		words.put("seeing#v", 0.25);
+		words.put("was#v", 0.03125);
+		words.put("is#v", 0.03125);
+	}
+	
+	@Test
+	public void testSinglePassMatchesTregexScores()
+	{
+		PhraseScoreExtractor extractor = new PhraseScoreExtractor(lexicon);
+		for(String s : TREES)
+		{
+			Tree parse = Tree.valueOf(s);
+			SentimentVector expected = tregexScores(parse);
+			SentimentVector actual = extractor.extract(parse);
+			Assert.assertEquals(s, expected.getAdjScore(), actual.getAdjScore(), DELTA);
+			Assert.assertEquals(s, expected.getAdvScore(), actual.getAdvScore(), DELTA);
+			Assert.assertEquals(s, expected.getNounScore(), actual.getNounScore(), DELTA);
+			Assert.assertEquals(s, expected.getVerbScore(), actual.getVerbScore(), DELTA);
+		}
+	}
+	
+	@Test
+	public void testNestedPhrasesCountedPerEnclosingPhrase()
+	{
+		//'good' is within 2 ADJP and 1 VP
+		Tree parse = Tree.valueOf("(ROOT (S (VP (VBD was) (ADJP (ADJP (JJ good))))))");
+		SentimentVector actual = new PhraseScoreExtractor(lexicon).extract(parse);
+		Assert.assertEquals(3 * 0.625, actual.getAdjScore(), DELTA);
+		Assert.assertEquals(0.03125, actual.getVerbScore(), DELTA);
+	}
+	
+	@Test
+	public void testNotLoadedLexiconScoresZero()
+	{
+		PhraseScoreExtractor extractor = new PhraseScoreExtractor(new SentimentLexicon() {
+			
+			@Override
+			public boolean isLoaded() {
+				return false;
+			}
+			
+			@Override
+			public double extract(CharSequence word, char pos) {
+				throw new IllegalStateException("Data not loaded!");
+			}
+		});
+		SentimentVector actual = extractor.extract(Tree.valueOf(TREES[0]));
+		Assert.assertEquals(0, actual.getAdjScore(), 0);
+		Assert.assertEquals(0, actual.getAdvScore(), 0);
+		Assert.assertEquals(0, actual.getNounScore(), 0);
+		Assert.assertEquals(0, actual.getVerbScore(), 0);
+	}
+	
+	/*
+	 * The previous Tregex based scoring in SentimentAnalyzer, kept as the reference for equivalence.
+	 */
+	private double tregexLeafScores(Tree parse, String[] patterns, char pos)
+	{
+		double score = 0.0;
+		for(String p : patterns)
+		{
+			TregexMatcher matcher = TregexPattern.compile(p).matcher(parse);
+			while (matcher.find()) {
+				Tree match = matcher.getMatch();
+				List<Tree> leaves = match.getLeaves();
+				for (Tree t : leaves)
+					score += lexicon.extract(t + "", pos);
+			}
+		}
+		return score;
+	}
+	private static final String[] ADJ = {"@JJ", "@JJR", "@JJS"};
+	private static final String[] ADV = {"@RB", "@RBR", "@RBS", "@ADVP"};
+	private static final String[] NOUN = {"@NN"};
+	private static final String[] VERB = {"@VB", "@VBD", "@VBG", "@VBZ", "@VBN", "@VBP"};
+	
+	private SentimentVector tregexScores(Tree parse)
+	{
+		SentimentVector vector = new SentimentVector();
+		double adj = 0, adv = 0, noun = 0, verb = 0;
+		if (parse.isPhrasal()) {
+			for(String phrase : new String[]{"@ADJP", "@VP"})
+			{
+				TregexMatcher matcher = TregexPattern.compile(phrase).matcher(parse);
+				while (matcher.find()) {
+					Tree match = matcher.getMatch();
+					adj += tregexLeafScores(match.deepCopy(), ADJ, SentimentLexicon.ADJ);
+					adv += tregexLeafScores(match.deepCopy(), ADV, SentimentLexicon.ADV);
+					noun += tregexLeafScores(match.deepCopy(), NOUN, SentimentLexicon.NOUN);
+					verb += tregexLeafScores(match.deepCopy(), VERB, SentimentLexicon.VERB);
+				}
+			}
+		}
+		vector.setAdjScore(adj);
+		vector.setAdvScore(adv);
+		vector.setNounScore(noun);
+		vector.setVerbScore(verb);
+		return vector;
+	}
+}
@@ -0,0 +1,126 @@
+/**
+ * Copyright 2017 esutdal
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package analytics.weka;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.BlockJUnit4ClassRunner;
+
+import reactivetechnologies.sentigrade.engine.nlp.SentiWordTable;
+import reactivetechnologies.sentigrade.engine.nlp.SentimentLexicon;
+
+@RunWith(BlockJUnit4ClassRunner.class)
+public class SentiWordTableTest {
+
+	private static final int WORDS = 1000;
+	
+	private static String word(int i)
+	{
+		StringBuilder s = new StringBuilder("w");
+		for (int n = i; n > 0; n /= 26) {
+			s.append((char) ('a' + n % 26));
+		}
+		return s.toString();
+	}
+	private static double score(int i, char pos)
+	{
+		return (i % 7 - 3) / 4.0 + pos / 1000.0;
+	}
+	/*
+	 * Starts small, so that the table grows and rehashes while building.
+	 */
+	private static SentiWordTable build()
+	{
+		SentiWordTable.Builder builder = new SentiWordTable.Builder(4);
+		for (int i = 0; i < WORDS; i++) {
+			Assert.assertTrue(builder.put(word(i), SentimentLexicon.NOUN, score(i, SentimentLexicon.NOUN)));
+			if(i % 2 == 0)
+				Assert.assertTrue(builder.put(word(i), SentimentLexicon.VERB, score(i, SentimentLexicon.VERB)));
+		}
+		Assert.assertTrue(builder.put("good deal", SentimentLexicon.ADJ, 0.5));
+		//not reachable by a lookup, hence not stored
+		Assert.assertFalse(builder.put("well-being", SentimentLexicon.NOUN, 0.5));
+		Assert.assertFalse(builder.put("", SentimentLexicon.NOUN, 0.5));
+		Assert.assertFalse(builder.put("good", 'x', 0.5));
+		return builder.build();
+	}
+	static void assertLookups(SentiWordTable table)
+	{
+		Assert.assertEquals(WORDS + 1, table.size());
+		for (int i = 0; i < WORDS; i++) {
+			String w = word(i);
+			Assert.assertEquals(w, score(i, SentimentLexicon.NOUN), table.get(w, SentimentLexicon.NOUN), 0);
+			Assert.assertEquals(w, i % 2 == 0 ? score(i, SentimentLexicon.VERB) : 0, table.get(w, SentimentLexicon.VERB), 0);
+			Assert.assertEquals(w, 0, table.get(w, SentimentLexicon.ADV), 0);
+		}
+		Assert.assertEquals(0.5, table.get("good deal", SentimentLexicon.ADJ), 0);
+		//characters other than letters and whitespace are skipped
+		Assert.assertEquals(0.5, table.get("good deal!", SentimentLexicon.ADJ), 0);
+		Assert.assertEquals(0.5, table.get(new StringBuilder("go'od deal"), SentimentLexicon.ADJ), 0);
+		
+		Assert.assertEquals(0, table.get("good", SentimentLexicon.ADJ), 0);
+		Assert.assertEquals(0, table.get("good deals", SentimentLexicon.ADJ), 0);
+		Assert.assertEquals(0, table.get("well being", SentimentLexicon.NOUN), 0);
+		Assert.assertEquals(0, table.get("good deal", 'x'), 0);
+	}
+	@Test
+	public void testBuildAndLookup()
+	{
+		assertLookups(build());
+	}
+	@Test
+	public void testSnapshotRoundTrip() throws IOException
+	{
+		File file = File.createTempFile("swn3", ".bin");
+		try 
+		{
+			build().writeTo(file, 1234, 5678);
+			assertLookups(SentiWordTable.map(file, 1234, 5678));
+			assertLookups(SentiWordTable.map(file, -1, 0));
+			//stale with respect to the source
+			Assert.assertNull(SentiWordTable.map(file, 1235, 5678));
+			Assert.assertNull(SentiWordTable.map(file, 1234, 5679));
+		} 
+		finally {
+			file.delete();
+		}
+	}
+	@Test
+	public void testMapRejectsInvalidSnapshot() throws IOException
+	{
+		File file = File.createTempFile("swn3", ".bin");
+		try 
+		{
+			try(FileOutputStream out = new FileOutputStream(file)) {
+				out.write(new byte[64]);
+			}
+			try {
+				SentiWordTable.map(file, -1, 0);
+				Assert.fail("expected an invalid snapshot");
+			} catch (IOException e) {
+				//expected
+			}
+		} 
+		finally {
+			file.delete();
+		}
+	}
+}
@@ -0,0 +1,122 @@
+/**
+ * Copyright 2017 esutdal
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package analytics.weka;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.BlockJUnit4ClassRunner;
+
+import reactivetechnologies.sentigrade.engine.weka.service.TermDictionary;
+import weka.core.Attribute;
+import weka.core.Instance;
+import weka.core.tokenizers.WordTokenizer;
+
+@RunWith(BlockJUnit4ClassRunner.class)
+public class TermDictionaryTest {
+
+	private static Attribute classAttribute()
+	{
+		return new Attribute("class", Arrays.asList("neg", "pos"));
+	}
+	@Test
+	public void testIndexStability()
+	{
+		TermDictionary dict = new TermDictionary(10, classAttribute());
+		Assert.assertEquals(0, dict.indexOf("good"));
+		Assert.assertEquals(1, dict.indexOf("bad"));
+		Assert.assertEquals(0, dict.indexOf("good"));
+		Assert.assertEquals(2, dict.indexOf("movie"));
+		Assert.assertEquals(1, dict.indexOf("bad"));
+		Assert.assertEquals(3, dict.size());
+		Assert.assertEquals(Arrays.asList("good", "bad", "movie"), dict.getTerms());
+		Assert.assertEquals("movie", dict.termAt(2));
+		Assert.assertNull(dict.termAt(3));
+		//capacity term attributes, and the class attribute last
+		Assert.assertEquals(11, dict.getHeader().numAttributes());
+		Assert.assertEquals(10, dict.getHeader().classIndex());
+	}
+	@Test
+	public void testVectorizeCountsAndOverflow()
+	{
+		TermDictionary dict = new TermDictionary(3, classAttribute());
+		Instance i = dict.vectorize("good good bad", 1, 1.0, new WordTokenizer());
+		Assert.assertEquals(2, i.value(0), 0);
+		Assert.assertEquals(1, i.value(1), 0);
+		Assert.assertEquals(0, i.value(2), 0);
+		Assert.assertEquals(1, i.classValue(), 0);
+		Assert.assertEquals(0, dict.getOverflowCount());
+		
+		//'great' takes the last free index, 'movie' and 'plot' do not fit
+		i = dict.vectorize("great movie plot bad", 0, 1.0, new WordTokenizer());
+		Assert.assertEquals(3, dict.size());
+		Assert.assertEquals(2, dict.getOverflowCount());
+		Assert.assertEquals(-1, dict.indexOf("movie"));
+		Assert.assertEquals(1, i.value(1), 0);
+		Assert.assertEquals(1, i.value(2), 0);
+		Assert.assertEquals(0, i.value(0), 0);
+		//existing terms still resolve after the capacity is exhausted
+		Assert.assertEquals(0, dict.indexOf("good"));
+		Assert.assertEquals(2, dict.indexOf("great"));
+	}
+	@Test
+	public void testSaveLoadRoundTrip() throws IOException
+	{
+		TermDictionary dict = new TermDictionary(5, classAttribute());
+		for(String t : Arrays.asList("good", "bad", "movie"))
+			dict.indexOf(t);
+		File file = File.createTempFile("terms", ".vocab");
+		try 
+		{
+			dict.save(file.toPath());
+			TermDictionary loaded = TermDictionary.load(file.toPath());
+			Assert.assertEquals(dict.getCapacity(), loaded.getCapacity());
+			Assert.assertEquals(dict.getTerms(), loaded.getTerms());
+			Assert.assertEquals(Arrays.asList("neg", "pos"), Arrays.asList(loaded.getHeader().classAttribute().value(0), loaded.getHeader().classAttribute().value(1)));
+			Assert.assertEquals(1, loaded.indexOf("bad"));
+			//new terms continue after the loaded ones
+			Assert.assertEquals(3, loaded.indexOf("plot"));
+		} 
+		finally {
+			file.delete();
+		}
+	}
+	@Test
+	public void testRestoreFromTerms()
+	{
+		List<String> terms = Arrays.asList("good", "bad", "movie");
+		TermDictionary dict = TermDictionary.of(5, classAttribute(), terms);
+		Assert.assertEquals(terms, dict.getTerms());
+		Assert.assertEquals(2, dict.indexOf("movie"));
+		try {
+			TermDictionary.of(2, classAttribute(), terms);
+			Assert.fail("expected terms beyond capacity to be rejected");
+		} catch (IllegalArgumentException e) {
+			//expected
+		}
+		try {
+			TermDictionary.of(5, classAttribute(), Arrays.asList("good", "good"));
+			Assert.fail("expected duplicate terms to be rejected");
+		} catch (IllegalArgumentException e) {
+			//expected
+		}
+	}
+}